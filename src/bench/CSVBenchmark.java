@@ -0,0 +1,308 @@
+package bench;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import chart.RadarChart;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import parser.CSVProcessor;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bench.CSVBenchmark class measures stages of parser.CSVProcessor
+ * and rendering of chart.RadarChart separately with JMH. Every stage is
+ * a benchmark, its input is prepared by the states and is not measured.
+ * Besides ops/s the megabytes and rows counters give MB/s and rows/s of
+ * a stage, allocation per operation is given by the gc profiler, which
+ * counts the pool threads of parseParallel too.
+ * Usage: java -jar jmh/target/benchmarks.jar [JMH options], e.g. -p shape=WIDE -p size=64M -prof gc,
+ * or java bench.CSVBenchmark [shape|all] [sizes, e.g. 1M,64M,10G] [iterations]
+ * Sizes above the heap are only useful for the mapped and parallel stages
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CSVBenchmark {
+    public static void main(String[] args) throws RunnerException {
+        String shapes = args.length > 0 ? args[0] : "all";
+        String sizes = args.length > 1 ? args[1] : "1M,16M";
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(CSVBenchmark.class.getName())
+                .param("size", sizes.split(","))
+                .measurementIterations(iterations)
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class);
+        if (!shapes.equalsIgnoreCase("all")) {
+            options.param("shape", shapes.toUpperCase(Locale.ROOT));
+        }
+        new Runner(options.build()).run();
+    }
+
+    /**
+     * Generated file, the same for all the iterations of a stage
+     */
+    @State(Scope.Benchmark)
+    public static class Data {
+        // shape of the lines
+        @Param({"NARROW", "WIDE", "QUOTED", "MULTILINE", "TRAILING_SPACES"})
+        public DataGenerator.Shape shape;
+
+        // size of the file, with an optional K, M or G suffix
+        @Param({"1M", "16M"})
+        public String size;
+
+        // the file
+        Path path;
+        File file;
+
+        // size of the file and number of its lines
+        long bytes;
+        long rows;
+
+        @Setup(Level.Trial)
+        public void generate() throws IOException {
+            path = Files.createTempFile("bench", ".csv");
+            rows = new DataGenerator(1).generate(path, shape, parseSize(size));
+            bytes = Files.size(path);
+            file = path.toFile();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Serialized fields of the file, prepared only for the serialization stages
+     */
+    @State(Scope.Benchmark)
+    public static class Serialized {
+        File file;
+
+        @Setup(Level.Trial)
+        public void serialize(Data data) throws IOException {
+            file = Files.createTempFile("bench", ".dat").toFile();
+            CSVProcessor processor = new CSVProcessor();
+            processor.load(data.file);
+            processor.parse();
+            processor.serialize(file);
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Processor with the loaded file, a new one for every operation
+     */
+    @State(Scope.Thread)
+    public static class Loaded {
+        CSVProcessor processor;
+
+        @Setup(Level.Invocation)
+        public void load(Data data) throws IOException {
+            processor = new CSVProcessor();
+            processor.load(data.file);
+        }
+    }
+
+    /**
+     * Processor with the parsed file, a new one for every operation
+     */
+    @State(Scope.Thread)
+    public static class Parsed {
+        CSVProcessor processor;
+
+        @Setup(Level.Invocation)
+        public void parse(Data data) throws IOException {
+            processor = new CSVProcessor();
+            processor.load(data.file);
+            processor.parse();
+        }
+    }
+
+    /**
+     * Processed megabytes and rows, JMH reports them per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Processed {
+        public double megabytes;
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            megabytes = 0;
+            rows = 0;
+        }
+
+        /**
+         * Counts an operation over the file
+         * @param data the file
+         */
+        void add(Data data) {
+            megabytes += data.bytes / 1e6;
+            rows += data.rows;
+        }
+    }
+
+    /**
+     * Radar chart and the image it is drawn into
+     */
+    @State(Scope.Thread)
+    public static class Chart {
+        // number of polygons and axes
+        @Param("12")
+        public int series;
+
+        @Param("64")
+        public int axesNumb;
+
+        RadarChart chart;
+        BufferedImage image;
+
+        @Setup(Level.Trial)
+        public void create() {
+            Random random = new Random(1);
+            ArrayList<String> header = new ArrayList<>();
+            ArrayList<String> axes = new ArrayList<>();
+            ArrayList<ArrayList<Number>> data = new ArrayList<>();
+            for (int i = 0; i < series; i++) header.add("series " + i);
+            for (int i = 0; i < axesNumb; i++) {
+                axes.add("axis " + i);
+                data.add(new ArrayList<>());
+                for (int j = 0; j < series; j++) data.get(i).add(random.nextInt(1000));
+            }
+
+            chart = new RadarChart(header, axes, data);
+            image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        }
+    }
+
+    @Benchmark
+    public CSVProcessor load(Data data, Processed processed) throws IOException {
+        CSVProcessor processor = new CSVProcessor();
+        processor.load(data.file);
+        processed.add(data);
+        return processor;
+    }
+
+    @Benchmark
+    public CSVProcessor parse(Data data, Loaded loaded, Processed processed) {
+        loaded.processor.parse();
+        processed.add(data);
+        return loaded.processor;
+    }
+
+    @Benchmark
+    public void getCsvFields(Data data, Parsed parsed, Processed processed, Blackhole blackhole) {
+        for (List<String> line : parsed.processor.getCsvFields()) {
+            for (String field : line) blackhole.consume(field.length());
+        }
+        processed.add(data);
+    }
+
+    @Benchmark
+    public CSVProcessor parseMapped(Data data, Processed processed) throws IOException {
+        CSVProcessor processor = new CSVProcessor();
+        processor.parseMapped(data.file);
+        processed.add(data);
+        return processor;
+    }
+
+    @Benchmark
+    public CSVProcessor parseParallel(Data data, Processed processed) throws IOException {
+        CSVProcessor processor = new CSVProcessor();
+        processor.parseParallel(data.file);
+        processed.add(data);
+        return processor;
+    }
+
+    @Benchmark
+    public void serialize(Data data, Serialized serialized, Parsed parsed, Processed processed) throws IOException {
+        parsed.processor.serialize(serialized.file);
+        processed.add(data);
+    }
+
+    @Benchmark
+    public CSVProcessor deserialize(Data data, Serialized serialized, Processed processed) throws IOException {
+        CSVProcessor processor = new CSVProcessor();
+        processor.deserialize(serialized.file);
+        processed.add(data);
+        return processor;
+    }
+
+    /**
+     * Draws the chart on the calling thread, the geometry is computed every time as for new data
+     */
+    @Benchmark
+    public int render(Chart chart) {
+        Graphics2D g = chart.image.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, 800, 600);
+            g.setColor(Color.BLACK);
+            chart.chart.dataChanged();
+            chart.chart.draw(g, 800, 600);
+        } finally {
+            g.dispose();
+        }
+        return chart.image.getRGB(400, 300);
+    }
+
+    /**
+     * Parses a size with an optional K, M or G suffix
+     * @param size the size
+     * @return number of bytes
+     */
+    private static long parseSize(String size) {
+        String s = size.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (s.endsWith("K")) unit = 1L << 10;
+        else if (s.endsWith("M")) unit = 1L << 20;
+        else if (s.endsWith("G")) unit = 1L << 30;
+        if (unit > 1) s = s.substring(0, s.length() - 1);
+        return Long.parseLong(s) * unit;
+    }
+}
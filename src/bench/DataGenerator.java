@@ -0,0 +1,122 @@
+package bench;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * bench.DataGenerator writes synthetic .csv files of a given size.
+ * Every shape stresses a different part of the automaton, all the
+ * lines of a file have the same number of fields
+ */
+public class DataGenerator {
+    /**
+     * Shapes of the generated lines
+     */
+    public enum Shape {
+        NARROW,             // 4 short plain fields
+        WIDE,               // 64 plain numeric fields
+        QUOTED,             // quoted fields with commas and doubled quotes
+        MULTILINE,          // quoted fields with embedded line separators
+        TRAILING_SPACES     // fields with long runs of inner and trailing spaces
+    }
+
+    // source of the field values, the same seed gives the same file
+    private final Random random;
+
+    /**
+     * Creates a generator
+     * @param seed seed of the values
+     */
+    public DataGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Writes a file
+     * @param path the file
+     * @param shape shape of the lines
+     * @param size minimal number of bytes, the last line is written completely
+     * @return number of lines
+     * @throws IOException
+     */
+    public long generate(Path path, Shape shape, long size) throws IOException {
+        long lines = 0;
+        long written = 0;
+        StringBuilder line = new StringBuilder();
+
+        try (BufferedWriter bw = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            while (written < size) {
+                line.setLength(0);
+                appendLine(line, shape, lines);
+                line.append('\n');
+                bw.append(line);
+                written += line.length();       // ascii only
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Appends fields of a line
+     * @param line destination
+     * @param shape shape of the line
+     * @param numb number of the line
+     */
+    private void appendLine(StringBuilder line, Shape shape, long numb) {
+        switch (shape) {
+            case NARROW:
+                line.append("id").append(numb).append(',')
+                    .append(random.nextInt(100000)).append(',')
+                    .append(random.nextDouble()).append(',')
+                    .append(word(3 + random.nextInt(8)));
+                break;
+            case WIDE:
+                for (int i = 0; i < 64; i++) {
+                    if (i > 0) line.append(',');
+                    line.append(random.nextInt(1000000));
+                }
+                break;
+            case QUOTED:
+                for (int i = 0; i < 8; i++) {
+                    if (i > 0) line.append(", ");
+                    line.append('"').append(word(4)).append(", ").append(word(6))
+                        .append(" \"\"").append(word(3)).append("\"\"\"");
+                }
+                break;
+            case MULTILINE:
+                line.append("id").append(numb).append(",\"")
+                    .append(word(10)).append('\n').append(word(20)).append("\r\n")
+                    .append(word(5)).append("\",").append(random.nextInt(1000));
+                break;
+            default:
+                for (int i = 0; i < 6; i++) {
+                    if (i > 0) line.append(',');
+                    line.append("   ").append(word(5)).append("      ")
+                        .append(word(5)).append("                ");
+                }
+        }
+    }
+
+    /**
+     * Creates a random word of lower case letters
+     * @param len length of the word
+     * @return the word
+     */
+    private String word(int len) {
+        char[] symbols = new char[len];
+        for (int i = 0; i < len; i++) {
+            symbols[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(symbols);
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * OOP2 assignments 3 and 4
+ * Created by V.Batytskyy on 15.04.14
+ */
+
+package chart;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * ChartRenderer class renders radar charts into PNG images without a
+ * display, so it works with java.awt.headless=true. Charts are
+ * rendered on a pool of threads; each thread keeps its image, graphics
+ * context and PNG writer while the charts have the same size, so a
+ * chart costs its drawing and encoding only.
+ * By default the charts are rendered by a fixed pool of daemon threads,
+ * any executor might be passed instead
+ */
+public class ChartRenderer implements Closeable {
+    // colors of the background and of the axes and labels
+    private static final Color BACKGROUND = Color.WHITE;
+    private static final Color FOREGROUND = Color.BLACK;
+
+    // font of the labels
+    private static final Font FONT = new Font(Font.DIALOG, Font.PLAIN, 12);
+
+    // quality of the PNG compression: a chart is mostly flat areas, so a fast
+    // deflate level makes images only a bit larger, but writes them faster
+    private static final float COMPRESSION_QUALITY = 0.8f;
+
+    // executor, which renders the charts
+    private final Executor executor;
+
+    // executor created by the renderer, null if it was passed
+    private final ExecutorService ownExecutor;
+
+    // canvas of each thread
+    private final ThreadLocal<Canvas> canvases;
+
+    /**
+     * Creates a renderer with a thread per core
+     */
+    public ChartRenderer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a renderer with its own pool of threads
+     * @param threads number of charts rendered at once
+     */
+    public ChartRenderer(int threads) {
+        if (threads <= 0) throw new IllegalArgumentException("Number of threads must be positive");
+
+        ownExecutor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "chart-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor = ownExecutor;
+        canvases = ThreadLocal.withInitial(Canvas::new);
+    }
+
+    /**
+     * Creates a renderer
+     * @param executor executor, which renders the charts
+     */
+    public ChartRenderer(Executor executor) {
+        ownExecutor = null;
+        this.executor = executor;
+        canvases = ThreadLocal.withInitial(Canvas::new);
+    }
+
+    /**
+     * Renders a chart into a new image on the calling thread
+     * @param chart the chart
+     * @param width width of the image
+     * @param height height of the image
+     * @return the image
+     */
+    public BufferedImage render(RadarChart chart, int width, int height) {
+        checkSize(width, height);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            draw(g, chart, width, height);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Renders a chart on the calling thread and writes it as PNG
+     * @param chart the chart
+     * @param width width of the image
+     * @param height height of the image
+     * @param out receiver of the image, it is not closed
+     * @throws IOException
+     */
+    public void writePng(RadarChart chart, int width, int height, OutputStream out) throws IOException {
+        checkSize(width, height);
+        Canvas canvas = canvases.get();
+        canvas.resize(width, height);
+        draw(canvas.graphics, chart, width, height);
+        canvas.write(out);
+    }
+
+    /**
+     * Submits a chart for rendering on the pool
+     * @param chart the chart
+     * @param width width of the image
+     * @param height height of the image
+     * @param out receiver of the image, it is not closed
+     * @return future, which fails with the error of rendering or writing
+     */
+    public CompletableFuture<Void> submit(RadarChart chart, int width, int height, OutputStream out) {
+        checkSize(width, height);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    writePng(chart, width, height, out);
+                    future.complete(null);
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Renders the charts on the pool, each into its own stream
+     * @param charts the charts
+     * @param width width of the images
+     * @param height height of the images
+     * @param output opens the stream of a chart, the stream is closed once the chart is written
+     * @return future, which fails with the first error of a chart
+     */
+    public CompletableFuture<Void> renderAll(List<RadarChart> charts, int width, int height, Output output) {
+        checkSize(width, height);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(charts.size());
+        for (int i = 0; i < charts.size(); i++) {
+            RadarChart chart = charts.get(i);
+            int index = i;
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try (OutputStream out = output.open(index)) {
+                        writePng(chart, width, height, out);
+                    } catch (IOException | RuntimeException e) {
+                        future.completeExceptionally(e);
+                        return;
+                    }
+                    future.complete(null);
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+            futures.add(future);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Stops own threads of the renderer, submitted charts are rendered first
+     */
+    @Override
+    public void close() {
+        if (ownExecutor != null) ownExecutor.shutdown();
+    }
+
+    /**
+     * Fills the background and draws a chart
+     * @param g graphics context
+     * @param chart the chart
+     * @param width width of the image
+     * @param height height of the image
+     */
+    private static void draw(Graphics2D g, RadarChart chart, int width, int height) {
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, width, height);
+        g.setColor(FOREGROUND);
+        g.setFont(FONT);
+        chart.draw(g, width, height);
+    }
+
+    /**
+     * Checks size of an image
+     * @param width width of the image
+     * @param height height of the image
+     */
+    private static void checkSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Size " + width + "x" + height + " must be positive");
+        }
+    }
+
+    /**
+     * Opens the stream of a chart
+     */
+    public interface Output {
+        /**
+         * Opens the stream of a chart
+         * @param index index of the chart in the list
+         * @return the stream
+         * @throws IOException
+         */
+        OutputStream open(int index) throws IOException;
+    }
+
+    /**
+     * Image, its graphics context and PNG writer of a thread
+     */
+    private static final class Canvas {
+        private final ImageWriter writer;
+        private final ImageWriteParam param;
+        private BufferedImage image;
+        private Graphics2D graphics;
+
+        Canvas() {
+            writer = ImageIO.getImageWritersByFormatName("png").next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(COMPRESSION_QUALITY);
+        }
+
+        /**
+         * Makes the image of the size, the image is kept if it has the size already
+         * @param width width of the image
+         * @param height height of the image
+         */
+        void resize(int width, int height) {
+            if (image != null && image.getWidth() == width && image.getHeight() == height) return;
+
+            if (graphics != null) graphics.dispose();
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            graphics = image.createGraphics();
+        }
+
+        /**
+         * Writes the image as PNG
+         * @param out receiver of the image, it is not closed
+         * @throws IOException
+         */
+        void write(OutputStream out) throws IOException {
+            try (ImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.setOutput(null);
+            }
+        }
+    }
+}
@@ -5,14 +5,16 @@
 
 package chart;
 
-import static java.lang.Math.*;
-import javafx.util.*;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -21,43 +23,46 @@ import java.util.ArrayList;
  * parameters and points on the axes, connected in polygons,
  * to measure the relative value of the specific parameter for
  * comparison.
- * Radar chart data is taken from ArrayList of Numbers
+ * Radar chart data is taken from ArrayList of Numbers, the chart
+ * itself is drawn by RadarChart in the size of the panel.
+ * The chart is rendered into an image by a background thread, the
+ * panel only copies the finished image, so the event dispatch thread
+ * does not wait for drawing. Areas requested while a render runs are
+ * merged and rendered at once by the next one, a render for an old
+ * size of the panel is dropped. A render, which is out of date when it
+ * is done, is not shown; its area is shown with the next one, unless
+ * the previous render was skipped as well, so steady changes still
+ * show up. A failed render goes to the uncaught exception handler of
+ * the painter thread. All the panels share one painter thread, which
+ * stops while there is nothing to render
  */
 public class DiagramDrawer extends JPanel {
-    // header values for table
-    private final ArrayList<String> header;
-
-    // names of the chart axes
-    private final ArrayList<String> axes;
-
-    // numeric data to represent
-    private final ArrayList<ArrayList<Number>> data;
-
-    // list of min-max pairs for each parameterf
-    private ArrayList<Pair<Number, Number>> minMaxAxesVals;
-
-    // end points of the axes
-    private final ArrayList<Point> axesEnds;
-
-    // central point of the chart
-    private Point center;
-
-    // used colors
-    private final static Color[] colorList = {
-            new Color(90, 107, 52, 100),
-            new Color(151, 32, 130, 100),
-            new Color(240, 214, 78, 100),
-            new Color(52, 221, 221, 100),
-            new Color(215, 183, 64, 200),
-            new Color(171, 128, 36, 200),
-            new Color(146, 88, 24, 200),
-            new Color(137, 232, 148, 200),
-            new Color(100, 100, 102, 200),
-            new Color(85, 151, 47, 200),
-            new Color(151, 93, 66, 200),
-            new Color(78, 34, 44, 200),
-            new Color(36, 37, 50, 200)
-    };
+    // seconds, after which the idle painter thread stops
+    private static final int PAINTER_KEEP_ALIVE = 30;
+
+    // thread, which renders the charts of all the panels
+    private static final ThreadPoolExecutor PAINTER = createPainter();
+
+    // the chart to paint
+    private final RadarChart chart;
+
+    // image shown on the panel, used on the event dispatch thread only
+    private BufferedImage front;
+
+    // image, which the chart is rendered into, used by the painter while it renders
+    private BufferedImage back;
+
+    // area to render by the next render, null if there is nothing to render
+    private Rectangle dirty;
+
+    // true while the painter renders
+    private boolean rendering;
+
+    // number of the requested renders, a render is out of date if it is not the last one
+    private long version;
+
+    // rendered area, which is not shown yet, null if everything is shown
+    private Rectangle unshown;
 
     /**
      * Creates new DiagramDrawer instance with specified data
@@ -67,222 +72,263 @@ public class DiagramDrawer extends JPanel {
      */
     public DiagramDrawer(ArrayList<String> header, ArrayList<String> axes,
                                       ArrayList<ArrayList<Number>> data) {
-        this.header = header;
-        this.axes = axes;
-        this.data = data;
-
-        axesEnds = new ArrayList<Point>();
-        center = new Point(getWidth() / 2, getHeight() / 2);
+        this(new RadarChart(header, axes, data));
     }
 
-    @Override
-    protected void paintComponent(Graphics graphics) {
-        super.paintComponent(graphics);
-
-        Graphics2D g = (Graphics2D) graphics;
-
-        // turn anti-aliasing on
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        center = new Point(getWidth() / 2, getHeight() / 2);
-
-        initAxesEnds();
-        int paramsNumb = axes.size();
-
-
-        int axeLength = center.y - axesEnds.get(0).y;
-
-        // shift of the label, relatively to its axis
-        int shift = 10;
-
-        // list of coordinates, which represent labels
-        ArrayList<Point> labelPoints = divideAxesInRatio(-(axeLength + shift) / shift);
-
-        // draw polygons
-        ArrayList<Point[]> polygonsCoord = new ArrayList<>();
-        minMaxAxesVals = getMinMaxAxesVals();
-        for (int i = 0; i < data.get(0).size(); i++) {
-            polygonsCoord.add(drawPoly(g, i));
-        }
-
-        // draw axes and labels
-        g.setStroke(new BasicStroke(3));
-        for (int i = 0; i < paramsNumb; i++) {
-            g.drawLine(center.x, center.y, axesEnds.get(i).x, axesEnds.get(i).y);
-            g.drawString(axes.get(i), labelPoints.get(i).x, labelPoints.get(i).y);
-        }
+    /**
+     * Creates new DiagramDrawer instance of a chart
+     * @param chart the chart
+     */
+    public DiagramDrawer(RadarChart chart) {
+        this.chart = chart;
 
-        // draw dots on the axes, where polygon touches them
-        for (Point[] points : polygonsCoord) {
-            for (int i = 0; i < paramsNumb; i++) {
-                int d = 7;                              // diameter
-                g.fillOval(points[i].x - d / 2, points[i].y - d / 2, d, d);
+        // wheel zooms the visible polygons in and out, with shift it scrolls them
+        addMouseWheelListener(e -> {
+            if (e.isShiftDown()) {
+                scroll(e.getWheelRotation());
+            } else {
+                zoom(e.getWheelRotation());
             }
+        });
+    }
 
-        }
-
-        // add legend
-        g.setStroke(new BasicStroke(1));
-        g.drawRect(2, 2, 150, 180);
-        FontMetrics metrics = graphics.getFontMetrics();
-        g.drawString("legend", 55, metrics.getHeight());
-
-        Color initialColor = g.getColor();
-        for (int i = 0; i < header.size(); i++) {
-            g.drawString(header.get(i), 90,
-                        (i + 2) * (metrics.getHeight() + metrics.getDescent()));
-
-            g.setColor(colorList[i]);
-            g.fillRect(10, (i + 2) * (metrics.getHeight() + metrics.getDescent()) - 12,
-                       70, metrics.getHeight());
+    public RadarChart getChart() {
+        return chart;
+    }
 
-            g.setColor(initialColor);
+    /**
+     * Changes a value of the chart and repaints only the area it changed
+     * @param axis index of the axis
+     * @param series index of the polygon
+     * @param value the value
+     */
+    public void setValue(int axis, int series, Number value) {
+        Rectangle area = chart.setValue(axis, series, value);
+        if (area == null) {
+            render(null);
+        } else if (!area.isEmpty()) {
+            render(area);
         }
     }
 
     /**
-     * Saves chart objects into an image
-     * @param file file where to save an image
-     * @param format .gif, .png or .jpeg File formats
-     * @throws NullPointerException is thrown when problem while reading the
-     * file occurred
+     * Adds axes at the end of the chart and repaints it
+     * @param names names of the axes
+     * @param values values of the polygons on each axis
      */
-    public void saveTo(final File file, String format) throws IOException, NullPointerException {
-        BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
-        Graphics2D graphics2D = image.createGraphics();
-        paint(graphics2D);
-        ImageIO.write(image, format, file);
+    public void addAxes(List<String> names, List<ArrayList<Number>> values) {
+        chart.addAxes(names, values);
+        render(null);
     }
 
     /**
-     * Initialize list of axis-end points
+     * Renames an axis and repaints the chart
+     * @param axis index of the axis
+     * @param name the name
      */
-    private void initAxesEnds() {
-        axesEnds.clear();
-
-        // find delta of angle between two adjacent axes
-        double dAlpha = 2 * Math.PI / (data.size());
-        int x0 = center.x;
-        int y0 = 30;
-
-        axesEnds.add(new Point(x0, y0));
-
-        for (int i = 1; i < data.size(); i++) {
-            // turn point x0, y0 to an angle
-            int xCur = (int) ((-sin(i * dAlpha) * (y0 - center.y))
-                    + (cos(i * dAlpha) * (x0 - center.x)) + center.x);
-
-            int yCur = (int)(cos(i * dAlpha)*(y0 - center.y)
-                    + sin(i * dAlpha)*(x0 - center.x) + center.y);
-
-            axesEnds.add(new Point(xCur, yCur));
-        }
+    public void setAxisName(int axis, String name) {
+        chart.setAxisName(axis, name);
+        render(null);
     }
 
     /**
-     * Finds coordinates for vertices of the polygons
-     * @param lambda division parameter
-     * @return list of coordinates
+     * Halves or doubles the visible polygons around the middle of them,
+     * the envelope turns into the polygons once they are few enough
+     * @param steps number of steps, negative to zoom in
      */
-    private ArrayList<Point> divideAxesInRatio(double lambda) {
-        ArrayList<Point> points = new ArrayList<>();
-
-        for (Point p : axesEnds) {
-            points.add(divideAxeInRatio(lambda, p));
-        }
-
-        return points;
+    public void zoom(int steps) {
+        int total = chart.getHeader().size();
+        int count = chart.getVisibleSeriesCount();
+        int middle = chart.getFirstVisibleSeries() + count / 2;
+
+        count = (int) Math.max(1, Math.min(total, count * Math.pow(2, steps)));
+        int first = Math.max(0, Math.min(total - count, middle - count / 2));
+        chart.setVisibleSeries(first, count);
+        render(null);
     }
 
     /**
-     * Finds coordinate of a new point
-     * @param lambda division parameter
-     * @param p the second point of the segment
-     * @return coordinates of the new point, which correspond to
-     * division of the segment in the exact proportion lambda
+     * Moves the visible polygons by a half of their number
+     * @param steps number of steps, negative to move back
      */
-    private Point divideAxeInRatio(double lambda, Point p) {
-        int dX = (int)((center.x + lambda * p.x) / (1. + lambda));
-        int dY = (int)((center.y + lambda * p.y) / (1. + lambda));
+    public void scroll(int steps) {
+        int total = chart.getHeader().size();
+        int count = chart.getVisibleSeriesCount();
+        int first = chart.getFirstVisibleSeries() + steps * Math.max(1, count / 2);
 
-        return new Point(dX, dY);
+        chart.setVisibleSeries(Math.max(0, Math.min(total - count, first)), count);
+        render(null);
     }
 
     /**
-     * finds list of min-max pairs, where each pair is limited by
-     * the specific parameter
-     * @return list of the min-max pairs
+     * Repaints the chart after its data were changed directly
      */
-    private ArrayList<Pair<Number, Number>> getMinMaxAxesVals() {
-        ArrayList<Pair<Number, Number>> minMaxAxesVals = new ArrayList<>();
+    public void dataChanged() {
+        chart.dataChanged();
+        render(null);
+    }
 
-        for (int j = 0; j < data.size(); j++) {
-            Number val = data.get(j).get(0);
-            minMaxAxesVals.add(new Pair(val, val));
+    /**
+     * Requests a render of an area of the chart, the area is merged
+     * with the areas, which are not rendered yet
+     * @param area the area, null for the whole chart
+     */
+    private void render(Rectangle area) {
+        Rectangle bounds = new Rectangle(getWidth(), getHeight());
+        area = area == null ? bounds : area.intersection(bounds);
+        if (area.isEmpty()) return;
+
+        if (dirty == null) {
+            dirty = area;
+        } else {
+            dirty.add(area);
         }
+        version++;
+        if (!rendering) startRender();
+    }
 
-        for (int i = 0; i < data.size(); i++) {
-            Number min = minMaxAxesVals.get(i).getKey();
-            Number max = min;
-
-            for (int j = 0; j < data.get(i).size(); j++) {
-                if (data.get(i).get(j).doubleValue() > max.doubleValue()) {
-                    max = data.get(i).get(j);
+    /**
+     * Passes the dirty area to the painter
+     */
+    private void startRender() {
+        final Rectangle area = dirty;
+        final int width = getWidth();
+        final int height = getHeight();
+        final Color background = getBackground();
+        final Color foreground = getForeground();
+        final Font font = getFont();
+        final long renderVersion = version;
+
+        dirty = null;
+        rendering = true;
+        PAINTER.execute(() -> {
+            Rectangle rendered = area;
+            try {
+                if (back == null || back.getWidth() != width || back.getHeight() != height) {
+                    back = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                    rendered = new Rectangle(width, height);
                 }
 
-                if (data.get(i).get(j).doubleValue() < min.doubleValue()) {
-                    min = data.get(i).get(j);
+                Graphics2D graphics2D = back.createGraphics();
+                try {
+                    graphics2D.setClip(rendered);
+                    graphics2D.setColor(background);
+                    graphics2D.fillRect(rendered.x, rendered.y, rendered.width, rendered.height);
+                    graphics2D.setColor(foreground);
+                    graphics2D.setFont(font);
+                    chart.draw(graphics2D, width, height);
+                } finally {
+                    graphics2D.dispose();
                 }
+            } catch (Throwable e) {
+                // the panel keeps the previous image and is not blocked by the failure
+                rendered = null;
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
             }
-            if (min.doubleValue() > 0) min = 0;
-
-            minMaxAxesVals.set(i, new Pair<>(min, max));
-        }
 
-        return minMaxAxesVals;
+            final Rectangle done = rendered;
+            SwingUtilities.invokeLater(() -> finishRender(done, width, height, renderVersion));
+        });
     }
 
     /**
-     * Draws polygon
-     * @param g graphics context
-     * @param param axis parameter
-     * @return array of points
+     * Copies the rendered area to the shown image and starts the next render
+     * @param area the rendered area, null if the render failed
+     * @param width width of the render
+     * @param height height of the render
+     * @param renderVersion version of the data, which were rendered
      */
-    private Point[] drawPoly(Graphics2D g, int param) {
-        Color initialColor = g.getColor();
+    private void finishRender(Rectangle area, int width, int height, long renderVersion) {
+        rendering = false;
+
+        // the render of an old size is dropped, the new size is requested by paintComponent
+        if (area == null || width != getWidth() || height != getHeight()) {
+            unshown = null;
+        } else if (renderVersion != version && unshown == null) {
+            // out of date, the image is still right outside the dirty area, so it is shown with the next render
+            unshown = area;
+        } else {
+            if (unshown != null) {
+                area = area.union(unshown);
+                unshown = null;
+            }
+            if (front == null || front.getWidth() != width || front.getHeight() != height) {
+                front = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                area = new Rectangle(width, height);
+            }
 
-        int vertices = data.size();
+            Graphics2D graphics2D = front.createGraphics();
+            try {
+                graphics2D.setClip(area);
+                graphics2D.drawImage(back, 0, 0, null);
+            } finally {
+                graphics2D.dispose();
+            }
+            repaint(area);
+        }
 
-        int[] xPoints = new int[vertices];
-        int[] yPoints = new int[vertices];
-        Point[] points = new Point[vertices];
+        if (dirty != null) startRender();
+    }
 
-        for (int i = 0; i < data.size(); i++) {
-            double min = minMaxAxesVals.get(i).getKey().doubleValue();
-            double max = minMaxAxesVals.get(i).getValue().doubleValue();
+    /**
+     * Checks if the shown image is the current chart
+     * @return true if the image has the size of the panel and nothing is rendered
+     */
+    private boolean isRendered() {
+        return front != null && front.getWidth() == getWidth() && front.getHeight() == getHeight()
+                && !rendering && dirty == null;
+    }
 
-            double lambda = (data.get(i).get(param).doubleValue() - min)
-                         / (max - data.get(i).get(param).doubleValue());
-            Point p;
-            if (lambda == Double.POSITIVE_INFINITY) {
-                p = divideAxeInRatio(20, axesEnds.get(i));
-            } else {
-                p = divideAxeInRatio(lambda, axesEnds.get(i));
-            }
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        super.paintComponent(graphics);
 
-            xPoints[i] = p.x;
-            yPoints[i] = p.y;
-            points[i] = new Point(p);
+        if (front == null || front.getWidth() != getWidth() || front.getHeight() != getHeight()) {
+            render(null);
         }
+        // the previous image is shown until the chart is rendered
+        if (front != null) graphics.drawImage(front, 0, 0, null);
+    }
 
+    /**
+     * Saves chart objects into an image, the shown image is saved if
+     * it is the current chart
+     * @param file file where to save an image
+     * @param format .gif, .png or .jpeg File formats
+     * @throws NullPointerException is thrown when problem while reading the
+     * file occurred
+     */
+    public void saveTo(final File file, String format) throws IOException, NullPointerException {
+        BufferedImage image = front;
+        if (!isRendered()) {
+            image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics2D = image.createGraphics();
+            try {
+                graphics2D.setColor(getBackground());
+                graphics2D.fillRect(0, 0, getWidth(), getHeight());
+                graphics2D.setColor(getForeground());
+                graphics2D.setFont(getFont());
+                chart.draw(graphics2D, getWidth(), getHeight());
+            } finally {
+                graphics2D.dispose();
+            }
+        }
+        ImageIO.write(image, format, file);
+    }
 
-        g.setColor(colorList[param]);
-        g.fillPolygon(xPoints, yPoints, vertices);
-
-        g.setColor(initialColor);
-        g.setStroke(new BasicStroke(1));
-        g.drawPolygon(xPoints, yPoints, vertices);
-
-        return points;
+    /**
+     * Creates the painter thread pool of one daemon thread
+     * @return the pool
+     */
+    private static ThreadPoolExecutor createPainter() {
+        ThreadPoolExecutor painter = new ThreadPoolExecutor(1, 1, PAINTER_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "chart-painter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        painter.allowCoreThreadTimeOut(true);
+        return painter;
     }
 }
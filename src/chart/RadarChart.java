@@ -0,0 +1,791 @@
+/**
+ * OOP2 assignments 3 and 4
+ * Created by V.Batytskyy on 15.04.14
+ */
+
+package chart;
+
+import static java.lang.Math.*;
+import parser.CSVTable;
+
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * RadarChart class draws a radar chart into any graphics context of
+ * the given size. The chart is painted on the screen by DiagramDrawer
+ * and into images without a display by ChartRenderer.
+ * Radar chart data is taken from ArrayList of Numbers: a list per
+ * axis with a value of each polygon.
+ * If more polygons are visible than the detail limit, they are not
+ * drawn one by one: each axis shows min, 25th percentile, median,
+ * 75th percentile and max of the visible values, so a frame costs the
+ * same whatever the number of polygons. Polygons are drawn again once
+ * the visible range is narrowed below the limit
+ */
+public class RadarChart {
+    // header values for table
+    private final ArrayList<String> header;
+
+    // names of the chart axes
+    private final ArrayList<String> axes;
+
+    // numeric data to represent
+    private final ArrayList<ArrayList<Number>> data;
+
+    // version of the data, changed by every edit
+    private long version;
+
+    // least and greatest value of each axis, computed for minMaxVersion
+    private double[] mins;
+    private double[] maxs;
+    private long minMaxVersion = -1;
+
+    // size, for which the axes are computed
+    private int cachedWidth = -1;
+    private int cachedHeight = -1;
+
+    // central point of the chart
+    private final Point center;
+
+    // end points of the axes and positions of their labels
+    private int[] axesX;
+    private int[] axesY;
+    private int[] labelX;
+    private int[] labelY;
+
+    // vertices of the polygons and their bounds with the dots, computed for polygonsVersion
+    private int[][] polyX;
+    private int[][] polyY;
+    private Rectangle[] polyBounds;
+    private long polygonsVersion = -1;
+
+    // visible polygons: index of the first one and the greatest number of them
+    private int firstSeries;
+    private int seriesLimit = Integer.MAX_VALUE;
+
+    // number of visible polygons, above which the percentile envelope is drawn
+    private int detailLimit = DEFAULT_DETAIL_LIMIT;
+
+    // min, p25, median, p75 and max polygons of the visible ones, computed for
+    // envelopeVersion, envelopeFirst and envelopeCount
+    private int[][] envelopeX;
+    private int[][] envelopeY;
+    private long envelopeVersion = -1;
+    private int envelopeFirst;
+    private int envelopeCount;
+
+    // values of an axis, reused while the percentiles are computed
+    private double[] axisValues = new double[0];
+
+    // diameter of the dots on the axes
+    private static final int DOT = 7;
+
+    // margin around a polygon, which is covered by its dots, mitered corners
+    // of its edges and anti-aliasing
+    private static final int MARGIN = 8;
+
+    // strokes of the axes, of the polygon edges and of the median
+    private static final BasicStroke AXIS_STROKE = new BasicStroke(3);
+    private static final BasicStroke EDGE_STROKE = new BasicStroke(1);
+    private static final BasicStroke MEDIAN_STROKE = new BasicStroke(2);
+
+    // default number of visible polygons, above which the percentile envelope is drawn
+    public static final int DEFAULT_DETAIL_LIMIT = 50;
+
+    // colors of the min - max and p25 - p75 bands of the envelope
+    private static final Color OUTER_BAND = new Color(52, 221, 221, 100);
+    private static final Color INNER_BAND = new Color(52, 107, 221, 140);
+
+    // used colors
+    private final static Color[] colorList = {
+            new Color(90, 107, 52, 100),
+            new Color(151, 32, 130, 100),
+            new Color(240, 214, 78, 100),
+            new Color(52, 221, 221, 100),
+            new Color(215, 183, 64, 200),
+            new Color(171, 128, 36, 200),
+            new Color(146, 88, 24, 200),
+            new Color(137, 232, 148, 200),
+            new Color(100, 100, 102, 200),
+            new Color(85, 151, 47, 200),
+            new Color(151, 93, 66, 200),
+            new Color(78, 34, 44, 200),
+            new Color(36, 37, 50, 200)
+    };
+
+    /**
+     * Creates new RadarChart instance with specified data
+     * @param header header data for chart
+     * @param axes axes names
+     * @param data numeric data
+     */
+    public RadarChart(ArrayList<String> header, ArrayList<String> axes,
+                      ArrayList<ArrayList<Number>> data) {
+        this.header = header;
+        this.axes = axes;
+        this.data = data;
+
+        center = new Point();
+    }
+
+    /**
+     * Creates a chart of a table with a header: the first column names
+     * the axes, each of the other columns is a polygon
+     * @param table the table
+     * @return the chart
+     * @throws NumberFormatException a value is not a number
+     */
+    public static RadarChart of(CSVTable table) {
+        if (table.getHeader() == null || table.getColumnCount() < 2 || table.getRowCount() < 1) {
+            throw new IllegalArgumentException("Not enough fields in csv");
+        }
+
+        int columns = table.getColumnCount();
+        ArrayList<String> header = new ArrayList<>(table.getHeader().subList(1, columns));
+        ArrayList<String> axes = new ArrayList<>(table.getRowCount());
+        ArrayList<ArrayList<Number>> data = new ArrayList<>(table.getRowCount());
+        for (int i = 0; i < table.getRowCount(); i++) {
+            axes.add(table.getString(i, 0));
+            data.add(new ArrayList<>(columns - 1));
+            for (int j = 1; j < columns; j++) {
+                data.get(i).add(table.getDouble(i, j));
+            }
+        }
+        return new RadarChart(header, axes, data);
+    }
+
+    public ArrayList<String> getHeader() {
+        return header;
+    }
+
+    public ArrayList<String> getAxes() {
+        return axes;
+    }
+
+    public ArrayList<ArrayList<Number>> getData() {
+        return data;
+    }
+
+    public synchronized int getFirstVisibleSeries() {
+        return firstSeries;
+    }
+
+    /**
+     * Returns number of the visible polygons
+     * @return number of polygons from the first visible one, but not more than the limit
+     */
+    public synchronized int getVisibleSeriesCount() {
+        return Math.max(0, Math.min(seriesLimit, header.size() - firstSeries));
+    }
+
+    /**
+     * Sets the visible polygons, the ranges of the axes stay the same
+     * @param first index of the first visible polygon
+     * @param count greatest number of visible polygons
+     */
+    public synchronized void setVisibleSeries(int first, int count) {
+        if (first < 0 || count <= 0) {
+            throw new IllegalArgumentException("Range of " + count + " polygons from " + first + " is empty");
+        }
+        firstSeries = first;
+        seriesLimit = count;
+    }
+
+    public synchronized int getDetailLimit() {
+        return detailLimit;
+    }
+
+    /**
+     * Sets number of visible polygons, above which they are drawn as
+     * the percentile envelope
+     * @param detailLimit the number of polygons
+     */
+    public synchronized void setDetailLimit(int detailLimit) {
+        if (detailLimit <= 0) throw new IllegalArgumentException("Detail limit must be positive");
+        this.detailLimit = detailLimit;
+    }
+
+    /**
+     * Checks if the percentile envelope is drawn instead of the polygons
+     * @return true if more polygons are visible than the detail limit
+     */
+    public synchronized boolean isEnvelope() {
+        return getVisibleSeriesCount() > detailLimit;
+    }
+
+    /**
+     * Changes a value and updates the cached geometry. Only the polygon of
+     * the value moves, unless the value changes the range of its axis
+     * @param axis index of the axis
+     * @param series index of the polygon
+     * @param value the value
+     * @return area of the chart to repaint, null if the whole chart changed
+     */
+    public synchronized Rectangle setValue(int axis, int series, Number value) {
+        double old = data.get(axis).get(series).doubleValue();
+        data.get(axis).set(series, value);
+
+        boolean cached = minMaxVersion == version && polygonsVersion == version;
+        version++;
+        if (minMaxVersion != version - 1) return null;
+
+        double min = mins[axis];
+        double max = maxs[axis];
+        updateMinMax(axis, old, value.doubleValue());
+        minMaxVersion = version;
+        if (!cached || mins[axis] != min || maxs[axis] != max || isEnvelope()) return null;
+
+        Rectangle dirty = new Rectangle(polyBounds[series]);
+        initPoly(series);
+        polygonsVersion = version;
+        if (series < firstSeries || series >= firstSeries + getVisibleSeriesCount()) {
+            // the polygon is not drawn
+            return new Rectangle();
+        }
+        dirty.add(polyBounds[series]);
+        return dirty;
+    }
+
+    /**
+     * Adds axes at the end of the chart
+     * @param names names of the axes
+     * @param values values of the polygons on each axis
+     */
+    public synchronized void addAxes(List<String> names, List<ArrayList<Number>> values) {
+        axes.addAll(names);
+        data.addAll(values);
+        version++;
+    }
+
+    /**
+     * Renames an axis
+     * @param axis index of the axis
+     * @param name the name
+     */
+    public synchronized void setAxisName(int axis, String name) {
+        axes.set(axis, name);
+    }
+
+    /**
+     * Drops the cached geometry, must be called if the lists of the
+     * data were changed directly
+     */
+    public synchronized void dataChanged() {
+        version++;
+    }
+
+    /**
+     * Draws the chart, the background is not filled. Only the polygons
+     * inside the clip of the graphics context are drawn, or the envelope
+     * if there are more visible polygons than the detail limit. The chart
+     * is locked only while its geometry is updated, then a snapshot of
+     * the geometry is drawn, so edits do not wait for the drawing
+     * @param g graphics context with the color and the font of the labels
+     * @param width width of the chart
+     * @param height height of the chart
+     */
+    public void draw(Graphics2D g, int width, int height) {
+        Frame frame;
+        synchronized (this) {
+            // nothing is drawn until the chart has axes
+            if (data.isEmpty()) return;
+            frame = prepare(width, height);
+        }
+        frame.draw(g);
+    }
+
+    /**
+     * Updates the geometry for the size and takes its snapshot
+     * @param width width of the chart
+     * @param height height of the chart
+     * @return the snapshot
+     */
+    private Frame prepare(int width, int height) {
+        initGeometry(width, height);
+        int first = firstSeries;
+        int count = getVisibleSeriesCount();
+        if (count > detailLimit) {
+            initEnvelope(first, count);
+        } else {
+            initPolygons();
+        }
+        return new Frame(this, first, count, count > detailLimit);
+    }
+
+    /**
+     * Computes the geometry, which is not cached for the size and the data
+     * @param width width of the chart
+     * @param height height of the chart
+     */
+    private void initGeometry(int width, int height) {
+        int axesNumb = data.size();
+
+        if (width != cachedWidth || height != cachedHeight || axesX == null || axesX.length != axesNumb) {
+            center.setLocation(width / 2, height / 2);
+            initAxesEnds();
+
+            int axeLength = center.y - axesY[0];
+
+            // shift of the label, relatively to its axis
+            int shift = 10;
+
+            // coordinates, which represent labels
+            labelX = new int[axesNumb];
+            labelY = new int[axesNumb];
+            for (int i = 0; i < axesNumb; i++) {
+                divideAxeInRatio(-(axeLength + shift) / shift, i, labelX, labelY, i);
+            }
+
+            cachedWidth = width;
+            cachedHeight = height;
+            polygonsVersion = -1;
+            envelopeVersion = -1;
+        }
+
+        if (minMaxVersion != version || mins.length != axesNumb) {
+            initMinMaxAxesVals();
+            minMaxVersion = version;
+        }
+    }
+
+    /**
+     * Computes vertices of the polygons, which are not cached for the data
+     */
+    private void initPolygons() {
+        int seriesNumb = data.get(0).size();
+        if (polygonsVersion != version || polyX.length != seriesNumb) {
+            polyX = new int[seriesNumb][];
+            polyY = new int[seriesNumb][];
+            polyBounds = new Rectangle[seriesNumb];
+            for (int j = 0; j < seriesNumb; j++) {
+                initPoly(j);
+            }
+            polygonsVersion = version;
+        }
+    }
+
+    /**
+     * Initialize arrays of axis-end points
+     */
+    private void initAxesEnds() {
+        int axesNumb = data.size();
+        axesX = new int[axesNumb];
+        axesY = new int[axesNumb];
+
+        // find delta of angle between two adjacent axes
+        double dAlpha = 2 * Math.PI / (axesNumb);
+        int x0 = center.x;
+        int y0 = 30;
+
+        axesX[0] = x0;
+        axesY[0] = y0;
+
+        for (int i = 1; i < axesNumb; i++) {
+            // turn point x0, y0 to an angle
+            axesX[i] = (int) ((-sin(i * dAlpha) * (y0 - center.y))
+                    + (cos(i * dAlpha) * (x0 - center.x)) + center.x);
+
+            axesY[i] = (int)(cos(i * dAlpha)*(y0 - center.y)
+                    + sin(i * dAlpha)*(x0 - center.x) + center.y);
+        }
+    }
+
+    /**
+     * Finds coordinate of a new point
+     * @param lambda division parameter
+     * @param axis index of the axis, its end is the second point of the segment
+     * @param xs receiver of the x coordinate
+     * @param ys receiver of the y coordinate
+     * @param k index of the new point in the receivers
+     */
+    private void divideAxeInRatio(double lambda, int axis, int[] xs, int[] ys, int k) {
+        xs[k] = (int)((center.x + lambda * axesX[axis]) / (1. + lambda));
+        ys[k] = (int)((center.y + lambda * axesY[axis]) / (1. + lambda));
+    }
+
+    /**
+     * Finds the point of a value on its axis
+     * @param axis index of the axis
+     * @param value the value
+     * @param xs receiver of the x coordinate
+     * @param ys receiver of the y coordinate
+     */
+    private void divideAxeByValue(int axis, double value, int[] xs, int[] ys) {
+        double min = mins[axis] > 0 ? 0 : mins[axis];
+        double max = maxs[axis];
+
+        double lambda = (value - min) / (max - value);
+        if (lambda == Double.POSITIVE_INFINITY) {
+            divideAxeInRatio(20, axis, xs, ys, axis);
+        } else {
+            divideAxeInRatio(lambda, axis, xs, ys, axis);
+        }
+    }
+
+    /**
+     * finds min and max values of each axis
+     */
+    private void initMinMaxAxesVals() {
+        mins = new double[data.size()];
+        maxs = new double[data.size()];
+        for (int i = 0; i < data.size(); i++) {
+            scanAxis(i);
+        }
+    }
+
+    /**
+     * finds min and max values of an axis
+     * @param axis index of the axis
+     */
+    private void scanAxis(int axis) {
+        ArrayList<Number> values = data.get(axis);
+        double min = values.get(0).doubleValue();
+        double max = min;
+
+        for (int j = 0; j < values.size(); j++) {
+            double value = values.get(j).doubleValue();
+            if (value > max) max = value;
+            if (value < min) min = value;
+        }
+        mins[axis] = min;
+        maxs[axis] = max;
+    }
+
+    /**
+     * Updates min and max values of an axis after a value is changed,
+     * the axis is scanned only if its old extreme value is gone
+     * @param axis index of the axis
+     * @param old the previous value
+     * @param value the new value
+     */
+    private void updateMinMax(int axis, double old, double value) {
+        if ((old == maxs[axis] && value < old) || (old == mins[axis] && value > old)) {
+            scanAxis(axis);
+            return;
+        }
+        if (value > maxs[axis]) maxs[axis] = value;
+        if (value < mins[axis]) mins[axis] = value;
+    }
+
+    /**
+     * Computes the envelope of the visible polygons, if it is not cached.
+     * Values of each axis are copied once, min and max are found while
+     * copying, the quartiles are selected in linear time
+     * @param first index of the first visible polygon
+     * @param count number of the visible polygons
+     */
+    private void initEnvelope(int first, int count) {
+        if (envelopeVersion == version && envelopeFirst == first && envelopeCount == count
+                && envelopeX[0].length == data.size()) {
+            return;
+        }
+
+        int vertices = data.size();
+        envelopeX = new int[5][vertices];
+        envelopeY = new int[5][vertices];
+        if (axisValues.length < count) axisValues = new double[count];
+
+        for (int i = 0; i < vertices; i++) {
+            ArrayList<Number> values = data.get(i);
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < count; j++) {
+                double value = values.get(first + j).doubleValue();
+                axisValues[j] = value;
+                if (value < min) min = value;
+                if (value > max) max = value;
+            }
+
+            // each quartile is selected among the values above the previous one
+            int p25 = (count - 1) / 4;
+            int median = (count - 1) / 2;
+            int p75 = (count - 1) * 3 / 4;
+            select(axisValues, 0, count, p25);
+            select(axisValues, p25, count, median);
+            select(axisValues, median, count, p75);
+
+            divideAxeByValue(i, min, envelopeX[0], envelopeY[0]);
+            divideAxeByValue(i, axisValues[p25], envelopeX[1], envelopeY[1]);
+            divideAxeByValue(i, axisValues[median], envelopeX[2], envelopeY[2]);
+            divideAxeByValue(i, axisValues[p75], envelopeX[3], envelopeY[3]);
+            divideAxeByValue(i, max, envelopeX[4], envelopeY[4]);
+        }
+
+        envelopeVersion = version;
+        envelopeFirst = first;
+        envelopeCount = count;
+    }
+
+    /**
+     * Moves the value of a rank to its place: values before it are not
+     * greater, values after it are not less
+     * @param values the values
+     * @param from index of the first value
+     * @param to index after the last value
+     * @param rank index of the value in sorted values
+     */
+    private static void select(double[] values, int from, int to, int rank) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo < hi) {
+            double pivot = values[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i++] = values[j];
+                    values[j--] = tmp;
+                }
+            }
+            if (rank <= j) {
+                hi = j;
+            } else if (rank >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Computes vertices of a polygon
+     * @param param axis parameter
+     */
+    private void initPoly(int param) {
+        int vertices = data.size();
+
+        int[] xPoints = new int[vertices];
+        int[] yPoints = new int[vertices];
+
+        for (int i = 0; i < vertices; i++) {
+            divideAxeByValue(i, data.get(i).get(param).doubleValue(), xPoints, yPoints);
+        }
+
+        Rectangle bounds = new Rectangle(xPoints[0], yPoints[0], 0, 0);
+        for (int i = 1; i < vertices; i++) {
+            bounds.add(xPoints[i], yPoints[i]);
+        }
+        bounds.grow(MARGIN, MARGIN);
+
+        polyX[param] = xPoints;
+        polyY[param] = yPoints;
+        polyBounds[param] = bounds;
+    }
+
+    /**
+     * Returns color of a polygon, the colors are repeated after the last one
+     * @param param index of the polygon
+     * @return the color
+     */
+    private static Color color(int param) {
+        return colorList[param % colorList.length];
+    }
+
+    /**
+     * Snapshot of the geometry of a chart, which is drawn without
+     * locking the chart
+     */
+    private static final class Frame {
+        private final Point center;                 // central point of the chart
+        private final int[] axesX;                  // end points of the axes
+        private final int[] axesY;
+        private final int[] labelX;                 // positions of the axis labels
+        private final int[] labelY;
+        private final String[] axes;                // names of the axes
+        private final int first;                    // index of the first visible polygon
+        private final int count;                    // number of the visible polygons
+        private final String[] names;               // names of the visible polygons, null for the envelope
+        private final boolean envelope;             // true if the envelope is drawn
+        private final int[][] polyX;                // vertices of the visible polygons
+        private final int[][] polyY;
+        private final Rectangle[] polyBounds;       // bounds of the visible polygons
+        private final int[][] envelopeX;            // polygons of the envelope
+        private final int[][] envelopeY;
+
+        /**
+         * Takes a snapshot of the chart, the arrays of the geometry are
+         * replaced and not changed, so only the lists are copied
+         * @param chart the chart with the geometry for the size
+         * @param first index of the first visible polygon
+         * @param count number of the visible polygons
+         * @param envelope true if the envelope is drawn
+         */
+        Frame(RadarChart chart, int first, int count, boolean envelope) {
+            center = new Point(chart.center);
+            axesX = chart.axesX;
+            axesY = chart.axesY;
+            labelX = chart.labelX;
+            labelY = chart.labelY;
+            axes = chart.axes.toArray(new String[0]);
+            this.first = first;
+            this.count = count;
+            this.envelope = envelope;
+            if (envelope) {
+                names = null;
+                polyX = null;
+                polyY = null;
+                polyBounds = null;
+                envelopeX = chart.envelopeX;
+                envelopeY = chart.envelopeY;
+            } else {
+                names = chart.header.subList(first, first + count).toArray(new String[0]);
+                polyX = Arrays.copyOfRange(chart.polyX, first, first + count);
+                polyY = Arrays.copyOfRange(chart.polyY, first, first + count);
+                polyBounds = Arrays.copyOfRange(chart.polyBounds, first, first + count);
+                envelopeX = null;
+                envelopeY = null;
+            }
+        }
+
+        /**
+         * Draws the snapshot
+         * @param g graphics context with the color and the font of the labels
+         */
+        void draw(Graphics2D g) {
+            // turn anti-aliasing on
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+            int paramsNumb = axes.length;
+            Rectangle clip = g.getClipBounds();
+
+            if (envelope) {
+                drawEnvelope(g);
+            } else {
+                // draw polygons
+                for (int i = 0; i < polyX.length; i++) {
+                    if (clip == null || clip.intersects(polyBounds[i])) drawPoly(g, i);
+                }
+            }
+
+            // draw axes and labels
+            g.setStroke(AXIS_STROKE);
+            for (int i = 0; i < paramsNumb; i++) {
+                g.drawLine(center.x, center.y, axesX[i], axesY[i]);
+                g.drawString(axes[i], labelX[i], labelY[i]);
+            }
+
+            // draw dots on the axes, where polygon touches them
+            for (int j = 0; !envelope && j < polyX.length; j++) {
+                if (clip != null && !clip.intersects(polyBounds[j])) continue;
+
+                for (int i = 0; i < paramsNumb; i++) {
+                    g.fillOval(polyX[j][i] - DOT / 2, polyY[j][i] - DOT / 2, DOT, DOT);
+                }
+            }
+
+            // add legend
+            g.setStroke(EDGE_STROKE);
+            g.drawRect(2, 2, 150, 180);
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString("legend", 55, metrics.getHeight());
+
+            if (envelope) {
+                drawEnvelopeLegend(g);
+                return;
+            }
+
+            Color initialColor = g.getColor();
+            for (int i = 0; i < names.length; i++) {
+                int y = (i + 2) * (metrics.getHeight() + metrics.getDescent());
+                if (clip != null && (y + metrics.getHeight() < clip.y || y - metrics.getHeight() - 12 > clip.y + clip.height)) {
+                    continue;
+                }
+
+                g.drawString(names[i], 90, y);
+
+                g.setColor(color(first + i));
+                g.fillRect(10, y - 12, 70, metrics.getHeight());
+
+                g.setColor(initialColor);
+            }
+        }
+
+        /**
+         * Draws the legend of the percentile envelope
+         * @param g graphics context
+         */
+        private void drawEnvelopeLegend(Graphics2D g) {
+            FontMetrics metrics = g.getFontMetrics();
+            int line = metrics.getHeight() + metrics.getDescent();
+            Color initialColor = g.getColor();
+
+            g.drawString(count + " series", 90, 2 * line);
+
+            g.drawString("min - max", 90, 3 * line);
+            g.setColor(OUTER_BAND);
+            g.fillRect(10, 3 * line - 12, 70, metrics.getHeight());
+
+            g.setColor(initialColor);
+            g.drawString("p25 - p75", 90, 4 * line);
+            g.setColor(INNER_BAND);
+            g.fillRect(10, 4 * line - 12, 70, metrics.getHeight());
+
+            g.setColor(initialColor);
+            g.drawString("median", 90, 5 * line);
+            g.setStroke(MEDIAN_STROKE);
+            g.drawLine(10, 5 * line - 5, 80, 5 * line - 5);
+            g.setStroke(EDGE_STROKE);
+        }
+
+        /**
+         * Draws the envelope: bands between min and max and between the
+         * quartiles, and the median
+         * @param g graphics context
+         */
+        private void drawEnvelope(Graphics2D g) {
+            Color initialColor = g.getColor();
+
+            g.setColor(OUTER_BAND);
+            g.fill(band(0, 4));
+            g.setColor(INNER_BAND);
+            g.fill(band(1, 3));
+
+            g.setColor(initialColor);
+            g.setStroke(MEDIAN_STROKE);
+            g.drawPolygon(envelopeX[2], envelopeY[2], envelopeX[2].length);
+            g.setStroke(EDGE_STROKE);
+        }
+
+        /**
+         * Makes a band between two polygons of the envelope
+         * @param inner index of the inner polygon
+         * @param outer index of the outer polygon
+         * @return the band
+         */
+        private Path2D band(int inner, int outer) {
+            Path2D band = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+            for (int k : new int[] {outer, inner}) {
+                band.moveTo(envelopeX[k][0], envelopeY[k][0]);
+                for (int i = 1; i < envelopeX[k].length; i++) {
+                    band.lineTo(envelopeX[k][i], envelopeY[k][i]);
+                }
+                band.closePath();
+            }
+            return band;
+        }
+
+        /**
+         * Draws polygon
+         * @param g graphics context
+         * @param param index of the polygon in the snapshot
+         */
+        private void drawPoly(Graphics2D g, int param) {
+            Color initialColor = g.getColor();
+
+            g.setColor(color(first + param));
+            g.fillPolygon(polyX[param], polyY[param], polyX[param].length);
+
+            g.setColor(initialColor);
+            g.setStroke(EDGE_STROKE);
+            g.drawPolygon(polyX[param], polyY[param], polyX[param].length);
+        }
+    }
+}
@@ -5,7 +5,8 @@
 
 package chart;
 
-import parser.CSVProcessor;
+import parser.CSVParseException;
+import parser.CSVRowIndex;
 
 import javax.swing.*;
 import javax.swing.table.AbstractTableModel;
@@ -14,13 +15,24 @@ import java.awt.event.*;
 import java.io.*;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
 
 /**
  * Test client for DiagramDrawer class
  */
 public class TestDraw {
+    // number of the first rows, which are shown on the chart
+    private static final int CHART_ROWS = 64;
+
     private final JFrame frame;
     private final DiagramDrawer diagramDrawer;
+    private final CSVTableModel tableModel;
+
+    // rows of the csv file, the rows, which are not on the chart, are read by the table from it
+    private CSVRowIndex csvIndex;
 
     // header labels
     private final ArrayList<String> header = new ArrayList<>();
@@ -28,9 +40,15 @@ public class TestDraw {
     // axes labels
     private final ArrayList<String> axes = new ArrayList<>();
 
-    // chart/table data
+    // chart/table data of the first rows
     private final ArrayList<ArrayList<Number>> data = new ArrayList<>();
 
+    // edited fields of the rows, which are not on the chart, by row * columns + column
+    private final HashMap<Long, Object> edits = new HashMap<>();
+
+    // number of the rows, which are parsed for the chart, used by the loader only
+    private int parsedRows;
+
     /**
      * Initializes main parameters
      */
@@ -42,7 +60,9 @@ public class TestDraw {
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
 
         loadData("csv/test.csv");
-        final JTable table = new JTable(new CSVTableModel());
+        tableModel = new CSVTableModel();
+        final JTable table = new JTable(tableModel);
+        table.setRowSorter(new CSVRowSorter());
 
         final JScrollPane tableSP = new JScrollPane(table);
         tableSP.setPreferredSize(new Dimension(800, 100));
@@ -64,6 +84,11 @@ public class TestDraw {
         frame.add(panel);
         frame.pack();
         frame.setVisible(true);
+
+        // the rows are indexed in background, the table grows as they are found
+        Thread loader = new Thread(this::loadRows, "csv-loader");
+        loader.setDaemon(true);
+        loader.start();
     }
 
     public static void main(String[] args) {
@@ -72,48 +97,93 @@ public class TestDraw {
     }
 
     /**
-     * Loads and parses data from csv file
+     * Opens csv file and reads its header, the rows are loaded by loadRows
      * @param fileName csv file name
      */
     private void loadData(String fileName) {
-        CSVProcessor csvProcessor = new CSVProcessor();
         try {
             File file = new File(fileName);
-            csvProcessor.load(file);
-            csvProcessor.parse();
 
-            ArrayList<ArrayList<String>> strData = csvProcessor.getCsvFields();
-            if (strData.size() < 2 || strData.get(0).size() < 2) {
+            // first line is the header, values of the other columns are numbers
+            csvIndex = new CSVRowIndex(file.toPath());
+            ArrayList<String> fileHeader = csvIndex.getHeader();
+            int columns = fileHeader == null ? 0 : fileHeader.size();
+            if (columns < 2) {
                 throw new Exception("Not enough fields in csv. Can't continue");
             }
+            header.addAll(fileHeader.subList(1, columns));
 
-            for (int i = 1; i < strData.get(0).size(); i++) {
-                header.add(strData.get(0).get(i));
-            }
+        } catch(Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
 
-            for (int i = 1; i < strData.size(); i++) {
-                data.add(new ArrayList<>(strData.get(i).size()));
-                for (int j = 1; j < strData.get(i).size(); j++) {
-                    data.get(i-1).add(NumberFormat.getInstance().parse(strData.get(i).get(j)));
-                }
+    /**
+     * Indexes the rows of the file and adds them to the table, the first rows are added to the chart
+     */
+    private void loadRows() {
+        try {
+            csvIndex.build(rows -> {
+                SwingUtilities.invokeLater(() -> tableModel.rowsIndexed(rows));
+                chartRows(Math.min(rows, CHART_ROWS));
+            });
+            if (csvIndex.getRowCount() == 0) {
+                throw new Exception("Not enough fields in csv. Can't continue");
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+            SwingUtilities.invokeLater(() -> {
+                showMsg("Can't load csv. " + e.getMessage(), JOptionPane.ERROR_MESSAGE);
+                System.exit(-1);
+            });
+        }
+    }
 
-            for (int i = 1; i < strData.size(); i++) {
-                axes.add(strData.get(i).get(0));
+    /**
+     * Parses the first rows, which are not on the chart yet, and adds them to the chart
+     * @param rows number of the rows on the chart
+     */
+    private void chartRows(int rows) {
+        if (rows <= parsedRows) return;
+
+        int columns = header.size() + 1;
+        ArrayList<String> names = new ArrayList<>(rows - parsedRows);
+        ArrayList<ArrayList<Number>> values = new ArrayList<>(rows - parsedRows);
+        for (; parsedRows < rows; parsedRows++) {
+            ArrayList<String> row = csvIndex.getRow(parsedRows);
+            ArrayList<Number> numbers = new ArrayList<>(columns - 1);
+            for (int j = 1; j < columns; j++) {
+                String field = j < row.size() ? row.get(j) : "";
+                double value = field.isEmpty() ? 0 : Double.parseDouble(field);
+                // integral values are shown without fraction
+                numbers.add(value == (long) value ? (Number) (long) value : (Number) value);
             }
-
-        } catch(Exception e) {
-            e.printStackTrace();
-            System.exit(-1);
+            values.add(numbers);
+            names.add(row.isEmpty() ? "" : row.get(0));
         }
+        SwingUtilities.invokeLater(() -> diagramDrawer.addAxes(names, values));
     }
 
     /**
-     * Table model for table representation
+     * Table model for table representation. Rows on the chart are read
+     * from its data, the other rows are read from the index of the file
+     * with their edited fields. All the rows are editable
      */
     private class CSVTableModel extends AbstractTableModel {
-
-        public CSVTableModel() {
+        // number of the rows, which the table knows about
+        private int rowCount;
+
+        /**
+         * Adds the rows, which are indexed
+         * @param rows number of the indexed rows
+         */
+        void rowsIndexed(int rows) {
+            if (rows <= rowCount) return;
+
+            int first = rowCount;
+            rowCount = rows;
+            fireTableRowsInserted(first, rows - 1);
         }
 
         @Override
@@ -124,16 +194,27 @@ public class TestDraw {
 
         @Override
         public int getRowCount() {
-            return data.size();
+            return rowCount;
         }
 
         @Override
         public int getColumnCount() {
-            return data.get(0).size() + 1;       // +1 column for parameters
+            return header.size() + 1;       // +1 column for parameters
         }
 
         @Override
         public Object getValueAt(final int rowIndex, final int columnIndex) {
+            if (rowIndex >= axes.size()) {
+                Object edited = edits.get(editKey(rowIndex, columnIndex));
+                if (edited != null) return edited;
+                try {
+                    return csvIndex.get(rowIndex, columnIndex);
+                } catch (CSVParseException | UncheckedIOException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }
+
             if (columnIndex == 0) return axes.get(rowIndex);
             else return data.get(rowIndex).get(columnIndex - 1);
 
@@ -148,23 +229,271 @@ public class TestDraw {
         public void setValueAt(final Object strValue, final int rowIndex, final int columnIndex) {
             try {
                 String str = (String)strValue;
-                if (columnIndex == 0) {
-                    axes.set(rowIndex, str);
+                if (rowIndex >= axes.size()) {
+                    // the rows, which are not on the chart, keep their edited fields aside the file
+                    Object value = columnIndex == 0 || str.isEmpty() ? str : NumberFormat.getInstance().parse(str);
+                    edits.put(editKey(rowIndex, columnIndex), value);
+                } else if (columnIndex == 0) {
+                    diagramDrawer.setAxisName(rowIndex, str);
                 } else {
+                    // only the polygon of the value is repainted
                     if (str.isEmpty()) {
-                        data.get(rowIndex).set(columnIndex - 1, 0);
+                        diagramDrawer.setValue(rowIndex, columnIndex - 1, 0);
                     } else {
                         final Number number = NumberFormat.getInstance().parse(str);
-                        data.get(rowIndex).set(columnIndex - 1, number);
+                        diagramDrawer.setValue(rowIndex, columnIndex - 1, number);
                     }
                 }
-                frame.repaint();
+                fireTableCellUpdated(rowIndex, columnIndex);
             } catch (Exception e) {
                 e.printStackTrace();
                 showMsg("Uncorrect value. This field must contain a number",
                                     JOptionPane.WARNING_MESSAGE);
             }
         }
+
+        /**
+         * Returns the key of an edited field
+         * @param row index of the row
+         * @param col index of the column
+         * @return the key
+         */
+        private long editKey(int row, int col) {
+            return (long) row * getColumnCount() + col;
+        }
+    }
+
+    /**
+     * Sorter of the table by a column. Keys of the rows on the chart and
+     * of the edited fields are copied from the model, keys of the other
+     * rows are parsed from the index block by block, the rows are sorted
+     * in background. Rows, which are indexed after the sort, follow the
+     * sorted ones
+     */
+    private class CSVRowSorter extends RowSorter<CSVTableModel> {
+        // the sort key, empty if the rows are in order of the file
+        private List<SortKey> sortKeys = Collections.emptyList();
+
+        // rows of the file in order of the table and their places in the table, null if not sorted
+        private int[] viewToModel;
+        private int[] modelToView;
+
+        // number of the requested sorts, a sort is dropped if a newer one is requested
+        private int sorts;
+
+        @Override
+        public CSVTableModel getModel() {
+            return tableModel;
+        }
+
+        @Override
+        public void toggleSortOrder(int column) {
+            SortOrder order = SortOrder.ASCENDING;
+            if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column
+                    && sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING) {
+                order = SortOrder.DESCENDING;
+            }
+            setSortKeys(Collections.singletonList(new SortKey(column, order)));
+        }
+
+        @Override
+        public int convertRowIndexToModel(int index) {
+            return viewToModel == null || index >= viewToModel.length ? index : viewToModel[index];
+        }
+
+        @Override
+        public int convertRowIndexToView(int index) {
+            return modelToView == null || index >= modelToView.length ? index : modelToView[index];
+        }
+
+        @Override
+        public void setSortKeys(List<? extends SortKey> keys) {
+            sorts++;
+            sortKeys = keys == null || keys.isEmpty() ? Collections.<SortKey>emptyList()
+                    : Collections.<SortKey>singletonList(keys.get(0));
+            fireSortOrderChanged();
+
+            if (sortKeys.isEmpty()) {
+                apply(null, null);
+            } else {
+                sort(sortKeys.get(0));
+            }
+        }
+
+        @Override
+        public List<? extends SortKey> getSortKeys() {
+            return sortKeys;
+        }
+
+        @Override
+        public int getViewRowCount() {
+            return tableModel.getRowCount();
+        }
+
+        @Override
+        public int getModelRowCount() {
+            return tableModel.getRowCount();
+        }
+
+        @Override
+        public void modelStructureChanged() {
+            setSortKeys(null);
+        }
+
+        @Override
+        public void allRowsChanged() {
+        }
+
+        @Override
+        public void rowsInserted(int firstRow, int endRow) {
+        }
+
+        @Override
+        public void rowsDeleted(int firstRow, int endRow) {
+        }
+
+        @Override
+        public void rowsUpdated(int firstRow, int endRow) {
+        }
+
+        @Override
+        public void rowsUpdated(int firstRow, int endRow, int column) {
+        }
+
+        /**
+         * Sorts the rows in background
+         * @param key column and order of the sort
+         */
+        private void sort(SortKey key) {
+            final int sort = sorts;
+            final int column = key.getColumn();
+            final boolean descending = key.getSortOrder() == SortOrder.DESCENDING;
+            final int rows = tableModel.getRowCount();
+            final int charted = Math.min(rows, axes.size());
+
+            // keys of the edited rows are copied here, since the model is changed on this thread
+            final String[] names = column == 0 ? new String[rows] : null;
+            final double[] numbers = column == 0 ? null : new double[rows];
+            final boolean[] copied = new boolean[rows];
+            for (int i = 0; i < charted; i++) {
+                if (column == 0) {
+                    names[i] = axes.get(i);
+                } else {
+                    numbers[i] = data.get(i).get(column - 1).doubleValue();
+                }
+                copied[i] = true;
+            }
+            int columns = tableModel.getColumnCount();
+            edits.forEach((editKey, value) -> {
+                int row = (int) (editKey / columns);
+                if (editKey % columns != column || row >= rows) return;
+                if (column == 0) {
+                    names[row] = (String) value;
+                } else {
+                    numbers[row] = value instanceof Number ? ((Number) value).doubleValue() : 0;
+                }
+                copied[row] = true;
+            });
+
+            Thread sorter = new Thread(() -> {
+                try {
+                    for (int i = charted; i < rows; i++) {
+                        if (copied[i]) continue;
+                        String field = csvIndex.get(i, column);
+                        if (column == 0) {
+                            names[i] = field == null ? "" : field;
+                        } else {
+                            numbers[i] = field == null || field.isEmpty() ? 0 : parseKey(field);
+                        }
+                    }
+
+                    IntBinaryOperator comparator = column == 0
+                            ? (a, b) -> names[a].compareTo(names[b])
+                            : (a, b) -> Double.compare(numbers[a], numbers[b]);
+                    int[] order = new int[rows];
+                    for (int i = 0; i < rows; i++) {
+                        order[i] = i;
+                    }
+                    sortRows(order, new int[rows], 0, rows,
+                            descending ? (a, b) -> comparator.applyAsInt(b, a) : comparator);
+
+                    int[] places = new int[rows];
+                    for (int i = 0; i < rows; i++) {
+                        places[order[i]] = i;
+                    }
+                    SwingUtilities.invokeLater(() -> {
+                        if (sort == sorts) apply(order, places);
+                    });
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }, "csv-sorter");
+            sorter.setDaemon(true);
+            sorter.start();
+        }
+
+        /**
+         * Sets the order of the rows
+         * @param order rows of the file in order of the table, null if not sorted
+         * @param places places of the rows in the table, null if not sorted
+         */
+        private void apply(int[] order, int[] places) {
+            int[] last = viewToModel;
+            viewToModel = order;
+            modelToView = places;
+            fireRowSorterChanged(last);
+        }
+    }
+
+    /**
+     * Parses a sort key of a numeric column
+     * @param field the field
+     * @return the number, NaN if the field is not a number
+     */
+    private static double parseKey(String field) {
+        try {
+            return Double.parseDouble(field);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Sorts rows by merging, equal rows keep their order
+     * @param rows indices of the rows
+     * @param buffer buffer of the size of the rows
+     * @param from index of the first row to sort
+     * @param to index after the last row to sort
+     * @param comparator comparator of two rows
+     */
+    private static void sortRows(int[] rows, int[] buffer, int from, int to, IntBinaryOperator comparator) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i;
+                for (; j > from && comparator.applyAsInt(rows[j - 1], row) > 0; j--) {
+                    rows[j] = rows[j - 1];
+                }
+                rows[j] = row;
+            }
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        sortRows(rows, buffer, from, mid, comparator);
+        sortRows(rows, buffer, mid, to, comparator);
+        if (comparator.applyAsInt(rows[mid - 1], rows[mid]) <= 0) return;
+
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && comparator.applyAsInt(buffer[i], buffer[j]) <= 0)) {
+                rows[k] = buffer[i++];
+            } else {
+                rows[k] = buffer[j++];
+            }
+        }
     }
 
     /**
@@ -0,0 +1,455 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+
+/**
+ * parser.Automate describes Automaton for csv parsing.
+ * Symbols are fed in arbitrary portions, line separators
+ * (\n, \r or \r\n) are recognized by the automate itself, so the
+ * input may be split at any position, even inside a quoted field.
+ * Completed records are passed to the parser.RecordHandler
+ */
+final class Automate {
+    // compiled passes between states
+    private final TransitionTable table;
+
+    // receiver of the completed records
+    private final RecordHandler handler;
+
+    // view of the current record, which is passed to the handler
+    private final CSVRecord record;
+
+    // current state inside the Automaton
+    private int curState;
+
+    // fields of the current line, reused from line to line
+    private StringBuilder[] fields;
+
+    // number of completed fields in the current line
+    private int fieldsNumb;
+
+    // current field for parsed symbols
+    private StringBuilder curField;
+
+    // spaces inside a field(before a comma), that might be added
+    private final StringBuilder trailSpaces;
+
+    // current symbol for parsing
+    private char curSymb;
+
+    // number of fields in the first line, -1 if there were no lines yet
+    private int lineSize;
+
+    private int col;                    // vertical position of the current symbol
+    private int row;                    // horizontal position of the current symbol
+
+    // line separator is met, but not passed to the automaton yet
+    private boolean newLinePending;
+
+    // previous symbol was \r, so the following \n is skipped
+    private boolean afterCR;
+
+    // some symbols of the current line are read
+    private boolean lineStarted;
+
+    // runs of appended symbols are found by parser.RunScanner
+    private final boolean bulkScan;
+
+    // receiver of the rejected rows, null if an error stops parsing
+    private Rejects rejects;
+
+    // the current line is rejected, its symbols are skipped till the separator
+    private boolean skipping;
+
+    // the last line is rejected, so its pending separator ends nothing
+    private boolean lineRejected;
+
+    // selection of columns and rows, null if all the records are passed
+    private CSVFilter filter;
+
+    // the first line is the header, which is not filtered
+    private boolean header;
+
+    // schema of the table, which tells how names of the header are compared, null if there is none
+    private CSVSchema schema;
+
+    // the filter compiled for the file, null while the header is not read
+    private RowFilter rowFilter;
+
+    // the header is not read yet
+    private boolean headerPending;
+
+    // the current row fails the filter, so its fields are not copied
+    private boolean rowDropped;
+
+    // symbols of the current field are not copied
+    private boolean curSkipped;
+
+    // counters of the parsed input since creation or reset
+    private long emittedRecords;
+    private long emittedFields;
+    private long quotedFields;
+    private long bufferedSpaces;
+
+    /**
+     * Creates new automate in the initial state
+     * @param table compiled automaton
+     * @param handler receiver of the parsed records
+     */
+    Automate(TransitionTable table, RecordHandler handler) {
+        this.table = table;
+        this.handler = handler;
+
+        record = new CSVRecord();
+        fields = new StringBuilder[8];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = new StringBuilder();
+        }
+        trailSpaces = new StringBuilder();
+        bulkScan = RunScanner.enabled();
+
+        col = 0;
+        row = 1;
+        lineSize = -1;
+        curState = TransitionTable.INITIAL_STATE;
+        curField = fields[0];
+    }
+
+    /**
+     * Returns the automate to the initial state, as if it was just
+     * created; buffers of the fields are kept for the next input
+     */
+    void reset() {
+        curState = TransitionTable.INITIAL_STATE;
+        startFilter();
+        startLine();
+        clearTrailingSpaces();
+        lineSize = -1;
+        col = 0;
+        row = 1;
+        newLinePending = false;
+        afterCR = false;
+        lineStarted = false;
+        skipping = false;
+        lineRejected = false;
+        emittedRecords = 0;
+        emittedFields = 0;
+        quotedFields = 0;
+        bufferedSpaces = 0;
+    }
+
+    /**
+     * Makes parsing lenient: a row with an error is passed to the
+     * rejects and parsing goes on from the next line
+     * @param rejects receiver of the rejected rows, null to stop on the first error
+     */
+    void setLenient(Rejects rejects) {
+        this.rejects = rejects;
+    }
+
+    /**
+     * Selects columns and rows of the input, symbols of the other
+     * columns and of the dropped rows are not copied
+     * @param filter the filter, null to pass all the records
+     * @param schema schema of the table, null if there is none; the first
+     *               line is the header if the schema says so, it is
+     *               implied if the filter finds columns by names. The
+     *               selected fields of the header are passed to the
+     *               handler as the first record
+     */
+    void setFilter(CSVFilter filter, CSVSchema schema) {
+        this.filter = filter;
+        this.schema = schema;
+        this.header = filter != null && ((schema != null && schema.hasHeader()) || filter.needsHeader());
+        rowFilter = null;
+        startFilter();
+        startLine();
+    }
+
+    /**
+     * Feeds a portion of symbols
+     * @param buf symbols
+     * @param off index of the first symbol
+     * @param len number of symbols
+     * @throws CSVParseException error occurred during parsing
+     */
+    void feed(char[] buf, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            consume(buf[i]);
+            if (bulkScan && inRun() && i + 1 < end) {
+                int runEnd = RunScanner.scan(table, curState, buf, i + 1, end);
+                if (!curSkipped) curField.append(buf, i + 1, runEnd - i - 1);
+                clearTrailingSpaces();
+                col += runEnd - i - 1;
+                i = runEnd - 1;
+            }
+        }
+    }
+
+    /**
+     * Feeds a portion of symbols
+     * @param str symbols
+     * @throws CSVParseException error occurred during parsing
+     */
+    void feed(CharSequence str) {
+        for (int i = 0, end = str.length(); i < end; i++) {
+            consume(str.charAt(i));
+            if (bulkScan && inRun() && i + 1 < end) {
+                int runEnd = RunScanner.scan(table, curState, str, i + 1, end);
+                if (!curSkipped) curField.append(str, i + 1, runEnd);
+                clearTrailingSpaces();
+                col += runEnd - i - 1;
+                i = runEnd - 1;
+            }
+        }
+    }
+
+    /**
+     * Checks if the following symbols might be appended as a run
+     * @return true if the automaton is in a state with runs
+     */
+    private boolean inRun() {
+        return !newLinePending && table.hasRuns(curState);
+    }
+
+    /**
+     * Marks the end of the line, same as feeding \n
+     */
+    void endLine() {
+        if (skipping) {
+            skipping = false;
+            lineRejected = true;
+        }
+        row++;
+        col = -1;
+        newLinePending = true;
+        lineStarted = false;
+        afterCR = false;
+    }
+
+    /**
+     * Finishes the last line, must be called once the input is over
+     * @throws CSVParseException error occurred during parsing
+     */
+    void finish() {
+        if (lineStarted) {
+            row++;                              // the last line has no separator
+            lineStarted = false;
+        }
+        if (skipping || lineRejected) {
+            skipping = false;
+            lineRejected = false;
+            return;
+        }
+        addNewLine();
+    }
+
+    /**
+     * Passes a symbol to the automaton, line separators are
+     * postponed till the next non-empty line
+     * @param symb the symbol
+     */
+    private void consume(char symb) {
+        if (symb == '\n' || symb == '\r') {
+            boolean skip = symb == '\n' && afterCR;
+            if (!skip) endLine();
+            afterCR = symb == '\r';
+            return;
+        }
+
+        afterCR = false;
+        lineStarted = true;
+        if (newLinePending) {
+            newLinePending = false;
+            col++;
+            if (!lineRejected) nextState('\n');
+            lineRejected = false;
+        }
+        col++;
+        if (!skipping) nextState(symb);
+    }
+
+    /**
+     * Adds counters of the parsed input to the metrics of a stage
+     * @param metrics the metrics
+     */
+    void addCounters(ParseMetrics metrics) {
+        metrics.add(emittedRecords, emittedFields, quotedFields, bufferedSpaces);
+    }
+
+    /**
+     * Defines next state from the curState and symbol
+     * @param symbol symbol that is used to define state
+     */
+    private void nextState(char symbol) {
+        curSymb = symbol;
+        int symbClass = table.symbolClass(symbol);
+        int action = table.action(curState, symbClass);
+        curState = table.nextState(curState, symbClass);
+
+        switch (action) {
+            case TransitionTable.ACT_APPEND_SYMB:
+                appendSymb();
+                clearTrailingSpaces();
+                break;
+            case TransitionTable.ACT_APPEND_TRAIL:
+                appendTrailingSpacesToField();
+                clearTrailingSpaces();
+                appendSymb();
+                break;
+            case TransitionTable.ACT_ADD_TRAIL:
+                addTrailingSpacesToString();
+                break;
+            case TransitionTable.ACT_FLUSH_TRAIL:
+                appendTrailingSpacesToField();
+                clearTrailingSpaces();
+                break;
+            case TransitionTable.ACT_OPEN_QUOTE:
+                quotedFields++;
+                break;
+            case TransitionTable.ACT_NEW_FIELD:
+                addNewField();
+                break;
+            case TransitionTable.ACT_NEW_LINE:
+                addNewLine();
+                break;
+            case TransitionTable.ACT_ERROR:
+                CSVParseException error = new CSVParseException("Unexpected symbol ' "+ curSymb+ " ' ", row, col);
+                if (rejects == null) throw error;
+
+                rejectLine(error);
+                skipping = true;
+                break;
+            default:                                    // empty action
+        }
+    }
+
+    /**
+     * Appends curSymb to a curField
+     */
+    private void appendSymb() {
+        if (!curSkipped) curField.append(curSymb);
+    }
+
+    /**
+     * Appends trailing spaces and tabs to a curField
+     */
+    private void appendTrailingSpacesToField() {
+        if (!curSkipped) curField.append(trailSpaces);
+    }
+
+    /**
+     * Adds trailing spaces to the trailSpaces string
+     */
+    private void addTrailingSpacesToString() {
+        bufferedSpaces++;
+        trailSpaces.append(curSymb);
+    }
+
+    /**
+     * Clears trailSpaces string
+     */
+    private void clearTrailingSpaces() {
+        trailSpaces.setLength(0);
+    }
+
+    /**
+     * Completes a curField and starts the next one
+     */
+    private void addNewField() {
+        if (rowFilter != null && !rowDropped && !rowFilter.test(fieldsNumb, curField)) rowDropped = true;
+
+        fieldsNumb++;
+        if (fieldsNumb == fields.length) {
+            StringBuilder[] grown = new StringBuilder[fields.length * 2];
+            System.arraycopy(fields, 0, grown, 0, fields.length);
+            for (int i = fields.length; i < grown.length; i++) {
+                grown[i] = new StringBuilder();
+            }
+            fields = grown;
+        }
+        curField = fields[fieldsNumb];
+        curField.setLength(0);
+        if (rowFilter != null) curSkipped = rowDropped || !rowFilter.copies(fieldsNumb);
+    }
+
+    /**
+     * Completes the current line and passes it to the handler
+     */
+    private void addNewLine() {
+        addNewField();
+
+        if (lineSize >= 0) {
+            if (fieldsNumb != lineSize) {
+                CSVParseException error = new CSVParseException(
+                        fieldsNumb > lineSize ? "Too much fields" : "Not enough fields", row - 1);
+                if (rejects == null) throw error;
+
+                rejectLine(error);
+                return;
+            }
+        } else {
+            lineSize = fieldsNumb;
+            if (rowFilter != null) rowFilter.check(fieldsNumb, row - 1);
+        }
+
+        if (rowDropped) {
+            startLine();
+            return;
+        }
+        if (headerPending) {
+            record.set(fields, fieldsNumb, row - 1);
+            rowFilter = new RowFilter(filter, record.toList(), schema, row - 1);
+            rowFilter.check(fieldsNumb, row - 1);
+            headerPending = false;
+        }
+
+        if (rowFilter == null) record.set(fields, fieldsNumb, row - 1);
+        else record.set(rowFilter.select(fields), rowFilter.selectedSize(fieldsNumb), row - 1);
+        emittedRecords++;
+        emittedFields += fieldsNumb;
+        handler.handle(record);
+
+        startLine();
+    }
+
+    /**
+     * Starts the fields of the next line
+     */
+    private void startLine() {
+        fieldsNumb = 0;
+        curField = fields[0];
+        curField.setLength(0);
+        rowDropped = false;
+        curSkipped = rowFilter != null && !rowFilter.copies(0);
+    }
+
+    /**
+     * Compiles the filter for the next input, a filter with the header
+     * is compiled once the header is read
+     */
+    private void startFilter() {
+        headerPending = header;
+        if (filter == null || header) rowFilter = null;
+        else if (rowFilter == null) rowFilter = new RowFilter(filter, null, schema, 0);
+    }
+
+    /**
+     * Passes the completed fields of the current line to the rejects
+     * and starts the next line from the initial state
+     * @param error reason of the rejection
+     * @throws CSVParseException the error, if the limit of errors is exceeded
+     */
+    private void rejectLine(CSVParseException error) {
+        record.set(fields, fieldsNumb, error.getLine());
+        rejects.reject(error, record.toList());
+
+        curState = TransitionTable.INITIAL_STATE;
+        startLine();
+        clearTrailingSpaces();
+    }
+}
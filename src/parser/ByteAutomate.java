@@ -0,0 +1,643 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * parser.ByteAutomate is the byte-level twin of parser.Automate.
+ * It runs the same automaton directly over bytes of ASCII-compatible
+ * input (UTF-8 is assumed for columns), no symbols are decoded.
+ * A field is kept as a slice (offset; length) of the input, while its
+ * bytes go one by one in the input; only fields with quotes, inner
+ * spaces or separators are copied to a spill buffer.
+ * The input is fed in windows, slices of the finished window are
+ * copied before the window is released
+ */
+final class ByteAutomate {
+    // compiled passes between states
+    private final TransitionTable table;
+
+    // receiver of the completed records
+    private final MappedRecordHandler handler;
+
+    // view of the current record, which is passed to the handler
+    private final MappedRecord record;
+
+    // current state inside the Automaton
+    private int curState;
+
+    // current window of the input and offset of its first byte
+    private ByteBuffer window;
+    private long windowStart;
+
+    // offsets of the completed fields in the input, -1 if a field is spilled
+    private long[] offsets;
+
+    // lengths of the completed fields in bytes
+    private int[] lengths;
+
+    // start of the spilled fields in the spill buffer
+    private int[] spillStarts;
+
+    // number of completed fields in the current line
+    private int fieldsNumb;
+
+    // copied bytes of the fields of the current line
+    private byte[] spill;
+    private int spillLen;
+
+    // current field: offset of its slice, length and copied flag
+    private long curOffset;
+    private int curLength;
+    private boolean curSpilled;
+    private int curSpillStart;
+
+    // spaces inside a field(before a comma), that might be added
+    private byte[] trailSpaces;
+    private int trailLen;
+
+    // current symbol for parsing and its offset, -1 for implicit \n
+    private byte curSymb;
+    private long curPos;
+
+    // bytes of an unexpected multi-byte symbol, which is not read completely
+    private final byte[] errorSymb = new byte[4];
+    private int errorLen;
+
+    // number of fields in the first line, -1 if there were no lines yet
+    private int lineSize;
+
+    private int col;                    // vertical position of the current symbol
+    private int row;                    // horizontal position of the current symbol
+
+    // line separator is met, but not passed to the automaton yet
+    private boolean newLinePending;
+    private long newLinePos;
+
+    // previous byte was \r, so the following \n is skipped
+    private boolean afterCR;
+
+    // some bytes of the current line are read
+    private boolean lineStarted;
+
+    // some bytes of the current record are read, it is not passed to the handler yet
+    private boolean recordStarted;
+
+    // the last line is passed to the handler by flushLine() or rejected
+    private boolean lineFlushed;
+
+    // receiver of the rejected rows, null if an error stops parsing
+    private Rejects rejects;
+
+    // the current line is rejected, its bytes are skipped till the separator
+    private boolean skipping;
+
+    // runs of appended bytes are found by parser.RunScanner
+    private final boolean bulkScan;
+
+    // counters of the parsed input since creation
+    private long emittedRecords;
+    private long emittedFields;
+    private long quotedFields;
+    private long bufferedSpaces;
+
+    /**
+     * Creates new automate in the initial state
+     * @param table compiled automaton
+     * @param handler receiver of the parsed records
+     */
+    ByteAutomate(TransitionTable table, MappedRecordHandler handler) {
+        this(table, handler, 1);
+    }
+
+    /**
+     * Creates new automate, which starts parsing at a beginning of a line
+     * @param table compiled automaton
+     * @param handler receiver of the parsed records
+     * @param row number of the first line
+     */
+    ByteAutomate(TransitionTable table, MappedRecordHandler handler, int row) {
+        this.table = table;
+        this.handler = handler;
+
+        record = new MappedRecord(this);
+        offsets = new long[8];
+        lengths = new int[8];
+        spillStarts = new int[8];
+        spill = new byte[256];
+        trailSpaces = new byte[16];
+        bulkScan = RunScanner.enabled();
+
+        this.row = row;
+        col = 0;
+        lineSize = -1;
+        curOffset = -1;
+        curState = TransitionTable.INITIAL_STATE;
+    }
+
+    /**
+     * Makes parsing lenient: a row with an error is passed to the
+     * rejects and parsing goes on from the next line
+     * @param rejects receiver of the rejected rows, null to stop on the first error
+     */
+    void setLenient(Rejects rejects) {
+        this.rejects = rejects;
+    }
+
+    /**
+     * Feeds bytes of a window. The window stays referenced by slices
+     * until the next window is fed or parsing is finished
+     * @param buf the window
+     * @param start offset of the window's byte 0 in the input
+     * @param from index of the first byte to parse
+     * @param to index after the last byte to parse
+     * @throws CSVParseException error occurred during parsing
+     */
+    void feed(ByteBuffer buf, long start, int from, int to) {
+        if (buf != window) {
+            releaseWindow();
+            window = buf;
+            windowStart = start;
+        }
+
+        for (int i = from; i < to; i++) {
+            consume(buf.get(i), start + i);
+            if (bulkScan && i + 1 < to && errorLen == 0 && !newLinePending) {
+                long[] stops = table.runStopPatterns(curState);
+                if (stops == null) continue;
+
+                int runEnd = RunScanner.scan(buf, i + 1, to, stops);
+                if (runEnd > i + 1) appendRun(start + i + 1, runEnd - i - 1);
+                i = runEnd - 1;
+            }
+        }
+    }
+
+    /**
+     * Marks the end of the line, same as feeding \n
+     * @param pos offset of the separator, -1 if it is implicit
+     */
+    void endLine(long pos) {
+        if (skipping) {
+            skipping = false;
+            lineFlushed = true;
+        }
+        row++;
+        col = -1;
+        if (!newLinePending) newLinePos = pos;
+        newLinePending = true;
+        lineStarted = false;
+        afterCR = false;
+    }
+
+    /**
+     * Passes the record, which ends with a pending line separator, to
+     * the handler without waiting for the next line. A separator inside
+     * a quoted field is kept pending, since the field might go on.
+     * The record gets the number of its own last line, while without
+     * flushing the following empty lines would be counted too
+     * @return true if a record is passed to the handler
+     * @throws CSVParseException error occurred during parsing
+     */
+    boolean flushLine() {
+        if (!newLinePending || !recordStarted || errorLen > 0) return false;
+        if (table.action(curState, TransitionTable.SYMB_NEW_LINE) != TransitionTable.ACT_NEW_LINE) return false;
+
+        newLinePending = false;
+        col++;
+        nextState((byte) '\n', newLinePos);
+        lineFlushed = true;
+        return true;
+    }
+
+    /**
+     * Copies slices of the current window, so the buffer of the window
+     * might be reused for the next bytes
+     */
+    void release() {
+        releaseWindow();
+        window = null;
+    }
+
+    /**
+     * Finishes the last line, must be called once the input is over
+     * @throws CSVParseException error occurred during parsing
+     */
+    void finish() {
+        if (errorLen > 0) rejectSymbol();
+        if (lineFlushed || skipping) {
+            skipping = false;
+            window = null;
+            return;
+        }
+
+        if (lineStarted) {
+            row++;                              // the last line has no separator
+            lineStarted = false;
+        }
+        curSymb = 0;
+        curPos = -1;
+        addNewLine();
+        window = null;
+    }
+
+    /**
+     * Passes a byte to the automaton, line separators are
+     * postponed till the next non-empty line
+     * @param symb the byte
+     * @param pos offset of the byte in the input
+     */
+    private void consume(byte symb, long pos) {
+        if (errorLen > 0) {
+            if ((symb & 0xC0) == 0x80 && errorLen < errorSymb.length) {
+                errorSymb[errorLen++] = symb;
+                return;
+            }
+            rejectSymbol();
+        }
+
+        if (symb == '\n' || symb == '\r') {
+            boolean skip = symb == '\n' && afterCR;
+            if (!skip) endLine(symb == '\n' ? pos : -1);
+            afterCR = symb == '\r';
+            return;
+        }
+
+        afterCR = false;
+        lineStarted = true;
+        if (skipping) return;
+        if (newLinePending) {
+            newLinePending = false;
+            col++;
+            if (!lineFlushed) nextState((byte) '\n', newLinePos);
+        }
+        recordStarted = true;
+        lineFlushed = false;
+
+        if ((symb & 0xC0) == 0x80) {
+            // continuation of a multi-byte symbol, the automaton has already
+            // passed its first byte, so the byte goes where the first one went
+            curSymb = symb;
+            curPos = pos;
+            appendSymb();
+            return;
+        }
+
+        col++;
+        nextState(symb, pos);
+    }
+
+    /**
+     * Adds counters of the parsed input to the metrics of a stage
+     * @param metrics the metrics
+     */
+    void addCounters(ParseMetrics metrics) {
+        metrics.add(emittedRecords, emittedFields, quotedFields, bufferedSpaces);
+    }
+
+    /**
+     * Defines next state from the curState and symbol
+     * @param symbol byte that is used to define state
+     * @param pos offset of the byte, -1 for implicit \n
+     */
+    private void nextState(byte symbol, long pos) {
+        curSymb = symbol;
+        curPos = pos;
+        int symbClass = symbol < 0 ? TransitionTable.SYMB_OTHER : table.symbolClass((char) symbol);
+        int action = table.action(curState, symbClass);
+        curState = table.nextState(curState, symbClass);
+
+        switch (action) {
+            case TransitionTable.ACT_APPEND_SYMB:
+                appendSymb();
+                clearTrailingSpaces();
+                break;
+            case TransitionTable.ACT_APPEND_TRAIL:
+                appendTrailingSpacesToField();
+                clearTrailingSpaces();
+                appendSymb();
+                break;
+            case TransitionTable.ACT_ADD_TRAIL:
+                addTrailingSpacesToString();
+                break;
+            case TransitionTable.ACT_FLUSH_TRAIL:
+                appendTrailingSpacesToField();
+                clearTrailingSpaces();
+                break;
+            case TransitionTable.ACT_OPEN_QUOTE:
+                quotedFields++;
+                break;
+            case TransitionTable.ACT_NEW_FIELD:
+                addNewField();
+                break;
+            case TransitionTable.ACT_NEW_LINE:
+                addNewLine();
+                break;
+            case TransitionTable.ACT_ERROR:
+                // the rest of the symbol might be in the next window
+                errorSymb[0] = curSymb;
+                errorLen = 1;
+                if (curSymb >= 0) rejectSymbol();
+                break;
+            default:                                    // empty action
+        }
+    }
+
+    /**
+     * Handles the unexpected symbol, which is kept in errorSymb: in the
+     * lenient mode the line is rejected and skipped till its separator
+     * @throws CSVParseException the error, if parsing is not lenient or the limit is exceeded
+     */
+    private void rejectSymbol() {
+        CSVParseException error = unexpectedSymbol(errorSymb, errorLen);
+        if (rejects == null) throw error;
+
+        errorLen = 0;
+        rejectLine(error);
+        skipping = true;
+    }
+
+    /**
+     * Passes the completed fields of the current line to the rejects
+     * and starts the next line from the initial state
+     * @param error reason of the rejection
+     * @throws CSVParseException the error, if the limit of errors is exceeded
+     */
+    private void rejectLine(CSVParseException error) {
+        record.set(fieldsNumb, error.getLine());
+        rejects.reject(error, record.toList());
+
+        curState = TransitionTable.INITIAL_STATE;
+        fieldsNumb = 0;
+        spillLen = 0;
+        curOffset = -1;
+        curLength = 0;
+        curSpilled = false;
+        recordStarted = false;
+        clearTrailingSpaces();
+    }
+
+    /**
+     * Creates the exception for an unexpected symbol
+     * @param bytes bytes of the symbol
+     * @param len number of bytes
+     * @return the exception
+     */
+    private CSVParseException unexpectedSymbol(byte[] bytes, int len) {
+        String symb = new String(bytes, 0, len, StandardCharsets.UTF_8);
+        return new CSVParseException("Unexpected symbol ' "+ symb + " ' ", row, col);
+    }
+
+    /**
+     * Appends curSymb to a curField, the field remains a slice
+     * while the symbol follows the field in the input
+     */
+    private void appendSymb() {
+        if (!curSpilled) {
+            if (curLength == 0 && curPos >= 0) {
+                curOffset = curPos;
+                curLength = 1;
+                return;
+            }
+            if (curPos >= 0 && curPos == curOffset + curLength) {
+                curLength++;
+                return;
+            }
+            spillCurField();
+        }
+        putSpill(curSymb);
+        curLength++;
+    }
+
+    /**
+     * Appends a run of ascii bytes of the current window to a curField,
+     * the same as passing them one by one in a state with runs
+     * @param pos offset of the first byte in the input
+     * @param len number of bytes
+     */
+    private void appendRun(long pos, int len) {
+        col += len;
+        clearTrailingSpaces();
+        if (!curSpilled) {
+            if (curLength == 0) {
+                curOffset = pos;
+                curLength = len;
+                return;
+            }
+            if (pos == curOffset + curLength) {
+                curLength += len;
+                return;
+            }
+            spillCurField();
+        }
+        copyToSpill(pos, len);
+        curLength += len;
+    }
+
+    /**
+     * Appends trailing spaces and tabs to a curField
+     */
+    private void appendTrailingSpacesToField() {
+        if (trailLen == 0) return;
+
+        if (!curSpilled && curLength > 0 && curPos >= 0
+                && curOffset + curLength + trailLen == curPos) {
+            // spaces are still in the input right after the slice
+            int from = (int) (curOffset + curLength - windowStart);
+            boolean same = from >= 0;
+            for (int k = 0; same && k < trailLen; k++) {
+                same = window.get(from + k) == trailSpaces[k];
+            }
+            if (same) {
+                curLength += trailLen;
+                return;
+            }
+        }
+
+        if (!curSpilled) spillCurField();
+        for (int k = 0; k < trailLen; k++) {
+            putSpill(trailSpaces[k]);
+        }
+        curLength += trailLen;
+    }
+
+    /**
+     * Adds trailing spaces to the trailSpaces string
+     */
+    private void addTrailingSpacesToString() {
+        bufferedSpaces++;
+        if (trailLen == trailSpaces.length) {
+            byte[] grown = new byte[trailLen * 2];
+            System.arraycopy(trailSpaces, 0, grown, 0, trailLen);
+            trailSpaces = grown;
+        }
+        trailSpaces[trailLen++] = curSymb;
+    }
+
+    /**
+     * Clears trailSpaces string
+     */
+    private void clearTrailingSpaces() {
+        trailLen = 0;
+    }
+
+    /**
+     * Completes a curField and starts the next one
+     */
+    private void addNewField() {
+        if (fieldsNumb == offsets.length) {
+            int size = offsets.length * 2;
+            long[] grownOffsets = new long[size];
+            int[] grownLengths = new int[size];
+            int[] grownStarts = new int[size];
+            System.arraycopy(offsets, 0, grownOffsets, 0, fieldsNumb);
+            System.arraycopy(lengths, 0, grownLengths, 0, fieldsNumb);
+            System.arraycopy(spillStarts, 0, grownStarts, 0, fieldsNumb);
+            offsets = grownOffsets;
+            lengths = grownLengths;
+            spillStarts = grownStarts;
+        }
+
+        offsets[fieldsNumb] = curSpilled || curLength == 0 ? -1 : curOffset;
+        lengths[fieldsNumb] = curLength;
+        spillStarts[fieldsNumb] = curSpilled ? curSpillStart : 0;
+        fieldsNumb++;
+
+        curOffset = -1;
+        curLength = 0;
+        curSpilled = false;
+    }
+
+    /**
+     * Completes the current line and passes it to the handler
+     */
+    private void addNewLine() {
+        addNewField();
+
+        if (lineSize >= 0) {
+            if (fieldsNumb != lineSize) {
+                CSVParseException error = new CSVParseException(
+                        fieldsNumb > lineSize ? "Too much fields" : "Not enough fields", row - 1);
+                if (rejects == null) throw error;
+
+                rejectLine(error);
+                return;
+            }
+        } else {
+            lineSize = fieldsNumb;
+        }
+
+        record.set(fieldsNumb, row - 1);
+        emittedRecords++;
+        emittedFields += fieldsNumb;
+        handler.handle(record);
+
+        fieldsNumb = 0;
+        spillLen = 0;
+        recordStarted = false;
+    }
+
+    /**
+     * Copies the slice of the curField into the spill buffer
+     */
+    private void spillCurField() {
+        curSpillStart = spillLen;
+        if (curLength > 0) copyToSpill(curOffset, curLength);
+        curSpilled = true;
+    }
+
+    /**
+     * Copies slices of the current line to the spill buffer,
+     * so the window might be released
+     */
+    private void releaseWindow() {
+        newLinePos = -1;
+        if (window == null) return;
+
+        // the current field is the last one in the spill buffer, move it after the others
+        int curStart = curSpillStart;
+        int curEnd = spillLen;
+
+        for (int i = 0; i < fieldsNumb; i++) {
+            if (offsets[i] >= 0) {
+                spillStarts[i] = spillLen;
+                copyToSpill(offsets[i], lengths[i]);
+                offsets[i] = -1;
+            }
+        }
+
+        if (curSpilled) {
+            if (spillLen != curEnd) {
+                int start = spillLen;
+                ensureSpill(curLength);
+                System.arraycopy(spill, curStart, spill, start, curLength);
+                spillLen += curLength;
+                curSpillStart = start;
+            }
+        } else if (curLength > 0) {
+            spillCurField();
+        }
+    }
+
+    /**
+     * Copies bytes of the current window to the spill buffer
+     * @param offset offset of the first byte in the input
+     * @param length number of bytes
+     */
+    private void copyToSpill(long offset, int length) {
+        ensureSpill(length);
+        window.get((int) (offset - windowStart), spill, spillLen, length);
+        spillLen += length;
+    }
+
+    /**
+     * Appends a byte to the spill buffer
+     * @param b the byte
+     */
+    private void putSpill(byte b) {
+        ensureSpill(1);
+        spill[spillLen++] = b;
+    }
+
+    /**
+     * Grows the spill buffer
+     * @param extra number of bytes to be appended
+     */
+    private void ensureSpill(int extra) {
+        if (spillLen + extra > spill.length) {
+            byte[] grown = new byte[Math.max(spill.length * 2, spillLen + extra)];
+            System.arraycopy(spill, 0, grown, 0, spillLen);
+            spill = grown;
+        }
+    }
+
+    // accessors for parser.MappedRecord
+
+    long offset(int i) {
+        return offsets[i];
+    }
+
+    int length(int i) {
+        return lengths[i];
+    }
+
+    byte byteAt(int i, int k) {
+        return offsets[i] >= 0 ? window.get((int) (offsets[i] - windowStart) + k)
+                               : spill[spillStarts[i] + k];
+    }
+
+    void copy(int i, byte[] dst, int dstOff) {
+        if (offsets[i] >= 0) {
+            ByteBuffer slice = window.duplicate();
+            slice.position((int) (offsets[i] - windowStart));
+            slice.get(dst, dstOff, lengths[i]);
+        } else {
+            System.arraycopy(spill, spillStarts[i], dst, dstOff, lengths[i]);
+        }
+    }
+}
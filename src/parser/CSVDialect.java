@@ -0,0 +1,253 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * parser.CSVDialect describes special symbols of a csv file: the field
+ * delimiter, the quote, the escape of the next symbol and trimming of
+ * spaces and tabs around unquoted fields. Lines end with \n, \r or \r\n
+ * in any dialect. A dialect is compiled into the automaton once, when
+ * it is created, so parsing costs the same for every dialect.
+ * Special symbols must be ascii and differ from each other
+ */
+public final class CSVDialect {
+    // absent quote or escape
+    public static final char NONE = '\0';
+
+    // number of bytes read by sniff()
+    public static final int SNIFF_SIZE = 64 * 1024;
+
+    // comma separated fields, quoted by ", spaces around fields are skipped
+    public static final CSVDialect DEFAULT = new CSVDialect(',', '"', NONE, true);
+
+    // delimiters, which are tried by sniff()
+    private static final char[] DELIMITERS = {',', ';', '\t', '|'};
+
+    // quotes, which are tried by sniff()
+    private static final char[] QUOTES = {'"', '\''};
+
+    private final char delimiter;           // separator of the fields
+    private final char quote;               // quote of the fields
+    private final char escape;              // escape of the next symbol
+    private final boolean trim;             // spaces around unquoted fields are skipped
+
+    // compiled automaton
+    private final TransitionTable table;
+
+    /**
+     * Creates a dialect
+     * @param delimiter separator of the fields
+     * @param quote quote of the fields, NONE if fields are not quoted
+     * @param escape escape of the next symbol, NONE if there is none
+     * @param trim true if spaces and tabs around unquoted fields are skipped
+     */
+    public CSVDialect(char delimiter, char quote, char escape, boolean trim) {
+        check(delimiter, "Delimiter");
+        if (delimiter == NONE) throw new IllegalArgumentException("Delimiter is required");
+        if (quote != NONE) check(quote, "Quote");
+        if (escape != NONE) check(escape, "Escape");
+        if (delimiter == quote || delimiter == escape || (quote != NONE && quote == escape)) {
+            throw new IllegalArgumentException("Delimiter, quote and escape must differ");
+        }
+        if (trim && (delimiter == ' ' || quote == ' ' || escape == ' ')) {
+            throw new IllegalArgumentException("Space can't be special, while spaces are trimmed");
+        }
+
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.escape = escape;
+        this.trim = trim;
+
+        boolean isDefault = delimiter == ',' && quote == '"' && escape == NONE && trim;
+        table = isDefault ? TransitionTable.DEFAULT : new TransitionTable(delimiter, quote, escape, trim);
+    }
+
+    /**
+     * Returns the same dialect with another delimiter
+     * @param delimiter separator of the fields
+     * @return the dialect
+     */
+    public CSVDialect withDelimiter(char delimiter) {
+        return new CSVDialect(delimiter, quote, escape, trim);
+    }
+
+    /**
+     * Returns the same dialect with another quote
+     * @param quote quote of the fields, NONE if fields are not quoted
+     * @return the dialect
+     */
+    public CSVDialect withQuote(char quote) {
+        return new CSVDialect(delimiter, quote, escape, trim);
+    }
+
+    /**
+     * Returns the same dialect with another escape
+     * @param escape escape of the next symbol, NONE if there is none
+     * @return the dialect
+     */
+    public CSVDialect withEscape(char escape) {
+        return new CSVDialect(delimiter, quote, escape, trim);
+    }
+
+    /**
+     * Returns the same dialect with another trimming
+     * @param trim true if spaces and tabs around unquoted fields are skipped
+     * @return the dialect
+     */
+    public CSVDialect withTrim(boolean trim) {
+        return new CSVDialect(delimiter, quote, escape, trim);
+    }
+
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    public char getQuote() {
+        return quote;
+    }
+
+    public char getEscape() {
+        return escape;
+    }
+
+    public boolean isTrim() {
+        return trim;
+    }
+
+    /**
+     * Returns the compiled automaton
+     * @return the automaton
+     */
+    TransitionTable table() {
+        return table;
+    }
+
+    /**
+     * Guesses the dialect of a file in the default charset by its first SNIFF_SIZE bytes
+     * @param path the file
+     * @return the dialect, DEFAULT if nothing fits better
+     * @throws IOException
+     */
+    public static CSVDialect sniff(Path path) throws IOException {
+        return sniff(path, Charset.defaultCharset());
+    }
+
+    /**
+     * Guesses the dialect of a file by its first SNIFF_SIZE bytes
+     * @param path the file
+     * @param charset charset of the file
+     * @return the dialect, DEFAULT if nothing fits better
+     * @throws IOException
+     */
+    public static CSVDialect sniff(Path path, Charset charset) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] bytes = in.readNBytes(SNIFF_SIZE);
+            return sniff(new String(bytes, charset), bytes.length == SNIFF_SIZE);
+        }
+    }
+
+    /**
+     * Guesses the dialect of a sample. Every combination of the usual
+     * delimiters, quotes and escapes is parsed by its automaton; the
+     * dialects, which parse the sample without errors, are compared by
+     * the number of fields per record, the simpler one wins a tie
+     * @param sample first lines of a file, the last record might be incomplete
+     * @return the dialect, DEFAULT if nothing fits better
+     */
+    public static CSVDialect sniff(CharSequence sample) {
+        return sniff(sample, true);
+    }
+
+    /**
+     * Guesses the dialect of a sample
+     * @param sample first lines of a file
+     * @param truncated true if the sample is cut, then its last record is ignored, unless it is the only one
+     * @return the dialect, DEFAULT if nothing fits better
+     */
+    private static CSVDialect sniff(CharSequence sample, boolean truncated) {
+        CSVDialect best = DEFAULT;
+        int bestFields = 1;
+        for (char delimiter : DELIMITERS) {
+            for (char quote : QUOTES) {
+                for (char escape : new char[] {NONE, '\\'}) {
+                    CSVDialect dialect = new CSVDialect(delimiter, quote, escape, true);
+                    int fields = fieldsPerRecord(dialect, sample, truncated);
+                    if (fields > bestFields) {
+                        best = dialect;
+                        bestFields = fields;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Parses a sample in a dialect. The records, which are completed by
+     * the automaton, are counted; the last one is completed only by
+     * finish() and it is ignored in a cut sample, where it may end
+     * anywhere, even inside a quoted field
+     * @param dialect the dialect
+     * @param sample the sample
+     * @param truncated true if the sample is cut
+     * @return number of fields per record, 0 if the sample is not parsed
+     */
+    private static int fieldsPerRecord(CSVDialect dialect, CharSequence sample, boolean truncated) {
+        int[] fields = {0};
+        Automate automate = new Automate(dialect.table, record -> fields[0] = record.size());
+        try {
+            automate.feed(sample);
+        } catch (CSVParseException e) {
+            return 0;
+        }
+        if (truncated && fields[0] > 0) return fields[0];   // the unterminated record is not parsed
+
+        try {
+            automate.finish();
+        } catch (CSVParseException e) {
+            return 0;
+        }
+        return fields[0];
+    }
+
+    /**
+     * Checks a special symbol
+     * @param c the symbol
+     * @param name name of the symbol for the message
+     */
+    private static void check(char c, String name) {
+        if (c >= 128 || c == '\n' || c == '\r') {
+            throw new IllegalArgumentException(name + " must be an ascii symbol other than a line separator");
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (! (obj instanceof CSVDialect)) return false;
+        CSVDialect other = (CSVDialect) obj;
+        return delimiter == other.delimiter && quote == other.quote
+                && escape == other.escape && trim == other.trim;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(delimiter, quote, escape, trim);
+    }
+
+    @Override
+    public String toString() {
+        return "delimiter '" + delimiter + "', quote " + (quote == NONE ? "none" : "'" + quote + "'")
+                + ", escape " + (escape == NONE ? "none" : "'" + escape + "'") + (trim ? ", trimmed" : "");
+    }
+}
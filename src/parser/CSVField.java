@@ -0,0 +1,141 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+
+/**
+ * parser.CSVField is a view of a field inside a parser.CSVTable buffer.
+ * Fields are compared and hashed by their symbols without copying,
+ * a String is created only by toString().
+ * A field equals only another field. It is not interchangeable with
+ * String as a key: a map with String keys doesn't find a field and
+ * vice versa, though the hash codes match. Use contentEquals() to
+ * compare with any sequence, or toString() to look up a String key.
+ * The natural ordering is inconsistent with equals: compareTo() compares
+ * symbols with any sequence, so it returns 0 for a String with the same
+ * symbols, which is not equal. Sorted sets and maps must not mix fields
+ * with other sequences
+ */
+public final class CSVField implements CharSequence, Comparable<CharSequence> {
+    // buffer of the column
+    private final char[] buf;
+
+    // bounds of the field inside the buffer
+    private final int start;
+    private final int end;
+
+    /**
+     * Creates a view of a part of a buffer
+     * @param buf the buffer
+     * @param start index of the first symbol
+     * @param end index after the last symbol
+     */
+    CSVField(char[] buf, int start, int end) {
+        this.buf = buf;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException("Symbol " + index + " of " + (end - start));
+        }
+        return buf[start + index];
+    }
+
+    @Override
+    public CSVField subSequence(int from, int to) {
+        if (from < 0 || to > end - start || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + "; " + to + ") of " + (end - start));
+        }
+        return new CSVField(buf, start + from, start + to);
+    }
+
+    /**
+     * Returns index of the first symbol in the buffer
+     * @return the index
+     */
+    int start() {
+        return start;
+    }
+
+    /**
+     * Returns index after the last symbol in the buffer
+     * @return the index
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * Checks if the field has the same symbols as a sequence
+     * @param seq the sequence
+     * @return true if symbols are equal
+     */
+    public boolean contentEquals(CharSequence seq) {
+        if (seq.length() != end - start) return false;
+        for (int i = start; i < end; i++) {
+            if (buf[i] != seq.charAt(i - start)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compares symbols lexicographically, as String does. Returns 0 for
+     * any sequence with the same symbols, while equals() is true only
+     * for a field
+     * @param seq the sequence
+     * @return negative, zero or positive number
+     */
+    @Override
+    public int compareTo(CharSequence seq) {
+        int len = Math.min(end - start, seq.length());
+        for (int i = 0; i < len; i++) {
+            char c = seq.charAt(i);
+            if (buf[start + i] != c) return buf[start + i] - c;
+        }
+        return (end - start) - seq.length();
+    }
+
+    /**
+     * Hash code of the symbols, computed as String does. It doesn't make
+     * the field equal to a String, see equals()
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h;
+    }
+
+    /**
+     * Compares symbols with another field. Any other object, a String
+     * with the same symbols too, is not equal, as equals() must be
+     * symmetric and String.equals() accepts only Strings
+     * @param obj the object
+     * @return true if obj is a field with the same symbols
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (! (obj instanceof CSVField)) return false;
+        return contentEquals((CSVField) obj);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, start, end - start);
+    }
+}
@@ -0,0 +1,221 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.util.Arrays;
+
+/**
+ * parser.CSVFilter selects columns and rows of a file while it is
+ * parsed. Symbols of the columns, which are neither selected nor
+ * tested, are not copied at all, and a row is dropped as soon as one
+ * of its tested fields fails. Columns are given by index or by name
+ * in the header, which is the first line then. The header itself is
+ * not tested, only its selected columns are passed on
+ */
+public final class CSVFilter {
+    // kinds of the conditions
+    static final int EQUALS = 0;
+    static final int RANGE = 1;
+    static final int PREFIX = 2;
+
+    // all the columns of all the rows
+    public static final CSVFilter ALL = new CSVFilter(null, null, new Condition[0]);
+
+    // selected columns by index, null if they are selected by names or all are selected
+    private final int[] columns;
+
+    // selected columns by name, null if they are selected by indices or all are selected
+    private final String[] names;
+
+    // conditions, which every passed row meets
+    private final Condition[] conditions;
+
+    private CSVFilter(int[] columns, String[] names, Condition[] conditions) {
+        this.columns = columns;
+        this.names = names;
+        this.conditions = conditions;
+    }
+
+    /**
+     * Creates a filter of columns
+     * @param columns indices of the columns in order of the records
+     * @return the filter, which passes all the rows
+     */
+    public static CSVFilter select(int... columns) {
+        for (int col : columns) {
+            if (col < 0) throw new IllegalArgumentException("Column " + col + " is negative");
+        }
+        return new CSVFilter(columns.clone(), null, new Condition[0]);
+    }
+
+    /**
+     * Creates a filter of columns, which are found by the header
+     * @param names names of the columns in order of the records
+     * @return the filter, which passes all the rows
+     */
+    public static CSVFilter select(String... names) {
+        for (String name : names) {
+            if (name == null) throw new IllegalArgumentException("Name of a column is null");
+        }
+        return new CSVFilter(null, names.clone(), new Condition[0]);
+    }
+
+    /**
+     * Returns the filter, which passes only rows with the field
+     * @param column index of the column
+     * @param value the field
+     * @return the filter
+     */
+    public CSVFilter whereEquals(int column, String value) {
+        return where(new Condition(EQUALS, column, null, value, 0, 0));
+    }
+
+    /**
+     * Returns the filter, which passes only rows with the field
+     * @param column name of the column
+     * @param value the field
+     * @return the filter
+     */
+    public CSVFilter whereEquals(String column, String value) {
+        return where(new Condition(EQUALS, -1, column, value, 0, 0));
+    }
+
+    /**
+     * Returns the filter, which passes only rows with a number in
+     * the range, empty fields and text are not in any range
+     * @param column index of the column
+     * @param min the least number
+     * @param max the greatest number
+     * @return the filter
+     */
+    public CSVFilter whereRange(int column, double min, double max) {
+        return where(new Condition(RANGE, column, null, null, min, max));
+    }
+
+    /**
+     * Returns the filter, which passes only rows with a number in
+     * the range, empty fields and text are not in any range
+     * @param column name of the column
+     * @param min the least number
+     * @param max the greatest number
+     * @return the filter
+     */
+    public CSVFilter whereRange(String column, double min, double max) {
+        return where(new Condition(RANGE, -1, column, null, min, max));
+    }
+
+    /**
+     * Returns the filter, which passes only rows with the field's prefix
+     * @param column index of the column
+     * @param prefix start of the field
+     * @return the filter
+     */
+    public CSVFilter wherePrefix(int column, String prefix) {
+        return where(new Condition(PREFIX, column, null, prefix, 0, 0));
+    }
+
+    /**
+     * Returns the filter, which passes only rows with the field's prefix
+     * @param column name of the column
+     * @param prefix start of the field
+     * @return the filter
+     */
+    public CSVFilter wherePrefix(String column, String prefix) {
+        return where(new Condition(PREFIX, -1, column, prefix, 0, 0));
+    }
+
+    /**
+     * Checks if columns are found by names, so the first line is the header
+     * @return true if the filter needs the header
+     */
+    public boolean needsHeader() {
+        if (names != null) return true;
+        for (Condition condition : conditions) {
+            if (condition.name != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the selected columns
+     * @return indices of the columns, null if they are selected by names or all are selected
+     */
+    int[] columns() {
+        return columns;
+    }
+
+    /**
+     * Returns the selected columns
+     * @return names of the columns, null if they are selected by indices or all are selected
+     */
+    String[] names() {
+        return names;
+    }
+
+    /**
+     * Returns the conditions of the rows
+     * @return the conditions
+     */
+    Condition[] conditions() {
+        return conditions;
+    }
+
+    /**
+     * Returns the filter with one more condition
+     * @param condition the condition
+     * @return the filter
+     */
+    private CSVFilter where(Condition condition) {
+        Condition[] more = Arrays.copyOf(conditions, conditions.length + 1);
+        more[conditions.length] = condition;
+        return new CSVFilter(columns, names, more);
+    }
+
+    @Override
+    public String toString() {
+        String selected = columns != null ? Arrays.toString(columns)
+                : names != null ? Arrays.toString(names) : "all columns";
+        return conditions.length == 0 ? selected : selected + " where " + Arrays.toString(conditions);
+    }
+
+    /**
+     * Condition of a field of the row
+     */
+    static final class Condition {
+        final int kind;                     // EQUALS, RANGE or PREFIX
+        final int column;                   // index of the column, -1 if it is found by name
+        final String name;                  // name of the column, null if it is given by index
+        final String value;                 // the field or its prefix
+        final double min;                   // range of the numbers
+        final double max;
+
+        Condition(int kind, int column, String name, String value, double min, double max) {
+            if (name == null && column < 0) throw new IllegalArgumentException("Column " + column + " is negative");
+            if (kind != RANGE && value == null) throw new IllegalArgumentException("Value is null");
+            if (kind == RANGE && !(min <= max)) throw new IllegalArgumentException("Range is empty");
+
+            this.kind = kind;
+            this.column = column;
+            this.name = name;
+            this.value = value;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            String col = name != null ? name : "#" + column;
+            switch (kind) {
+                case EQUALS:
+                    return col + " = \"" + value + "\"";
+                case RANGE:
+                    return col + " in [" + min + "; " + max + "]";
+                default:
+                    return col + " starts with \"" + value + "\"";
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The parser.CSVIngestor class parses many files concurrently, each file
+ * into its own parser.CSVTable. Submitted files wait in a queue, at most
+ * maxConcurrency of them are parsed at once, whatever the executor is,
+ * so files per second depend on cores and disks, not on creating
+ * threads. A file is read into a pooled buffer and parsed by the byte
+ * automate, so a small file allocates only its table and automate.
+ * By default the files are parsed by a fixed pool of daemon threads;
+ * any executor, e.g. a virtual thread per task executor, might be
+ * passed instead
+ */
+public class CSVIngestor implements Closeable {
+    // default size of a read buffer
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // executor, which parses the files
+    private final Executor executor;
+
+    // executor created by the ingestor, null if it was passed
+    private final ExecutorService ownExecutor;
+
+    // maximal number of files parsed at once
+    private final int maxConcurrency;
+
+    // types of the columns, null if all the columns are text
+    private final CSVSchema schema;
+
+    // dialect of the files
+    private final CSVDialect dialect;
+
+    // size of a read buffer
+    private final int bufferSize;
+
+    // files, which are submitted, but not parsed yet
+    private final ConcurrentLinkedQueue<Job> pending;
+
+    // read buffers, which are not used now
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers;
+
+    // number of running workers
+    private final AtomicInteger workers;
+
+    /**
+     * Creates an ingestor of text columns, which parses a file per core at once
+     */
+    public CSVIngestor() {
+        this(Runtime.getRuntime().availableProcessors(), null, CSVDialect.DEFAULT);
+    }
+
+    /**
+     * Creates an ingestor with its own pool of maxConcurrency threads
+     * @param maxConcurrency maximal number of files parsed at once
+     * @param schema types of the columns, null if all the columns are text
+     * @param dialect dialect of the files
+     */
+    public CSVIngestor(int maxConcurrency, CSVSchema schema, CSVDialect dialect) {
+        this(null, maxConcurrency, schema, dialect, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates an ingestor
+     * @param executor executor, which parses the files, null for own pool of daemon threads
+     * @param maxConcurrency maximal number of files parsed at once
+     * @param schema types of the columns, null if all the columns are text
+     * @param dialect dialect of the files
+     * @param bufferSize size of a read buffer
+     */
+    public CSVIngestor(Executor executor, int maxConcurrency, CSVSchema schema,
+                       CSVDialect dialect, int bufferSize) {
+        if (maxConcurrency <= 0) throw new IllegalArgumentException("Concurrency must be positive");
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be positive");
+
+        if (executor == null) {
+            ownExecutor = Executors.newFixedThreadPool(maxConcurrency, task -> {
+                Thread thread = new Thread(task, "csv-ingestor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = ownExecutor;
+        } else {
+            ownExecutor = null;
+            this.executor = executor;
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.schema = schema;
+        this.dialect = dialect;
+        this.bufferSize = bufferSize;
+        pending = new ConcurrentLinkedQueue<>();
+        buffers = new ConcurrentLinkedQueue<>();
+        workers = new AtomicInteger();
+    }
+
+    /**
+     * Submits a file for parsing
+     * @param path the file
+     * @return future of the table, it fails with the error of parsing or reading
+     */
+    public CompletableFuture<CSVTable> submit(Path path) {
+        Job job = new Job(path);
+        pending.add(job);
+        startWorker();
+        return job.future;
+    }
+
+    /**
+     * Parses the files, a failed file does not stop the others
+     * @param paths the files
+     * @return future of the results in order of the files, it never fails
+     */
+    public CompletableFuture<List<Result>> ingest(Collection<Path> paths) {
+        List<CompletableFuture<Result>> results = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            results.add(submit(path).handle((table, error) -> new Result(path, table,
+                    error instanceof CompletionException ? error.getCause() : error)));
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<Result> list = new ArrayList<>(results.size());
+            for (CompletableFuture<Result> result : results) {
+                list.add(result.join());
+            }
+            return list;
+        });
+    }
+
+    /**
+     * Parses the files of a directory, which match a glob
+     * @param dir the directory
+     * @param glob pattern of the file names, e.g. "*.csv"
+     * @return future of the results in order of the directory listing, it never fails
+     * @throws IOException the directory can't be listed
+     */
+    public CompletableFuture<List<Result>> ingest(Path dir, String glob) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, glob)) {
+            for (Path path : files) {
+                if (Files.isRegularFile(path)) paths.add(path);
+            }
+        }
+        return ingest(paths);
+    }
+
+    /**
+     * Stops own threads of the ingestor, submitted files are parsed first
+     */
+    @Override
+    public void close() {
+        if (ownExecutor != null) ownExecutor.shutdown();
+    }
+
+    /**
+     * Starts a worker, if there are pending files and a free slot. Each
+     * submitted file starts at most one worker, a worker parses files
+     * until the queue is empty
+     */
+    private void startWorker() {
+        int running;
+        do {
+            running = workers.get();
+            if (running >= maxConcurrency || pending.isEmpty()) return;
+        } while (!workers.compareAndSet(running, running + 1));
+
+        try {
+            executor.execute(this::work);
+        } catch (RejectedExecutionException e) {
+            workers.decrementAndGet();
+            Job job;
+            while ((job = pending.poll()) != null) {
+                job.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Parses pending files until the queue is empty
+     */
+    private void work() {
+        ByteBuffer buf = buffers.poll();
+        if (buf == null) buf = ByteBuffer.allocate(bufferSize);
+        try {
+            Job job;
+            while ((job = pending.poll()) != null) {
+                try {
+                    job.future.complete(parse(job.path, buf));
+                } catch (Throwable e) {
+                    // errors too, e.g. a table out of memory, fail only their file, the future is never left pending
+                    job.future.completeExceptionally(e);
+                }
+            }
+        } finally {
+            buffers.add(buf);
+            workers.decrementAndGet();
+        }
+        startWorker();                             // a file might be submitted after the last poll
+    }
+
+    /**
+     * Parses a file
+     * @param path the file
+     * @param buf read buffer
+     * @return the table
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    private CSVTable parse(Path path, ByteBuffer buf) throws IOException {
+        CSVTable table = new CSVTable(schema);
+        ByteAutomate automate = new ByteAutomate(dialect.table(), table::addRow);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long offset = 0;
+            int n;
+            while ((n = channel.read(buf.clear(), offset)) > 0) {
+                automate.feed(buf, offset, 0, n);
+                automate.release();
+                offset += n;
+            }
+        }
+        automate.finish();
+        return table;
+    }
+
+    /**
+     * Submitted file and future of its table
+     */
+    private static final class Job {
+        private final Path path;
+        private final CompletableFuture<CSVTable> future;
+
+        Job(Path path) {
+            this.path = path;
+            future = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * Result of a file: the table or the error
+     */
+    public static final class Result {
+        private final Path path;
+        private final CSVTable table;
+        private final Throwable error;
+
+        Result(Path path, CSVTable table, Throwable error) {
+            this.path = path;
+            this.table = table;
+            this.error = error;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the table
+         * @return the table, null if the file failed
+         */
+        public CSVTable getTable() {
+            return table;
+        }
+
+        /**
+         * Returns the error of parsing or reading
+         * @return the error, null if the file is parsed
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return path + (error == null ? ": " + table.getRowCount() + " rows" : ": " + error);
+        }
+    }
+}
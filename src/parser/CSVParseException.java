@@ -9,7 +9,12 @@ package parser;
 /**
  * parser.CSVParseException describes parse exception
  */
-class CSVParseException extends RuntimeException {
+public class CSVParseException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;             // line, where the exception occurred
+    private final int col;              // column, where the exception occurred, 0 if unspecified
+
     /**
      * Constructor for the exception
      * @param err explicit message as the reason of exception
@@ -18,6 +23,8 @@ class CSVParseException extends RuntimeException {
      */
     public CSVParseException(String err, int line, int col) {
         super(err + " at line " + line + ", column " + col);
+        this.line = line;
+        this.col = col;
     }
 
     /**
@@ -27,5 +34,25 @@ class CSVParseException extends RuntimeException {
      */
     public CSVParseException(String err, int line) {
         super(err + " in line " + line);
+        this.line = line;
+        this.col = 0;
+    }
+
+    /**
+     * Returns line, where the exception occurred
+     * @return number of the line
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns column, where the exception occurred. It is the position
+     * of the symbol for syntax errors and the number of the field for
+     * errors in typed fields
+     * @return number of the column, 0 if unspecified
+     */
+    public int getColumn() {
+        return col;
     }
 }
@@ -6,49 +6,65 @@ package parser;
  */
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import jdk.jfr.FlightRecorder;
 
 /**
  * The parser.CSVProcessor class provides methods for saving and
  * loading a .csv file and serializing/deserializing
- * its list representation
+ * its parsed fields. A processor is reused after reset(): its automate
+ * and the storage of the table are kept, so parsing many small inputs
+ * of the same shape allocates nothing once the buffers have grown.
+ * A processor is not thread-safe, each thread needs its own one.
+ * Each stage reports its metrics to the listeners and to the flight
+ * recorder; while nobody listens, stages are not measured at all.
+ * A lenient processor skips bad rows and passes them to its
+ * parser.RejectHandler instead of stopping on the first error.
+ * A parser.CSVFilter selects columns and rows while the file is parsed
  */
 public class CSVProcessor {
     // lines of a .csv file
     private ArrayList<String> lines;
 
     // fields of a parsed csv file
-    private ArrayList<ArrayList<StringBuilder>> csvFields;
+    private CSVTable table;
 
-    // current line for parsed fields addition
-    private ArrayList<StringBuilder> curLine;
+    // declared types of the columns, null if all the columns are text
+    private CSVSchema schema;
 
-    // current field for parsed symbols
-    private StringBuilder curField;
+    // special symbols of the file
+    private CSVDialect dialect;
 
-    // spaces inside a field(before a comma), that might be added
-    private StringBuilder trailSpaces;
+    // automate of the dialect, created by the first parsing and reused
+    private Automate automate;
 
-    // current symbol for parsing
-    private char curSymb;
+    // selection of columns and rows, null if all the records are parsed
+    private CSVFilter filter;
 
-    private int col;                    // vertical position of the current symbol
-    private int row;                    // horizontal position of the current symbol
+    // receivers of the metrics of the stages
+    private final ArrayList<ParseListener> listeners;
+
+    // receiver of the rejected rows, null if an error stops parsing
+    private RejectHandler rejectHandler;
+
+    // maximal number of rejected rows of a parsing
+    private int maxErrors;
+
+    // rejected rows of the last parsing, null if it was not lenient
+    private Rejects rejects;
 
     /**
      * Create an instance of ArrayList
      */
     public CSVProcessor() {
-        col = 0;
-        row = 1;
         lines = new ArrayList<String>();
-        csvFields = new ArrayList<ArrayList<StringBuilder>>();
-
-        curLine = new ArrayList<StringBuilder>();
-        curField = new StringBuilder();
-        trailSpaces = new StringBuilder();
+        table = new CSVTable();
+        dialect = CSVDialect.DEFAULT;
+        listeners = new ArrayList<>();
     }
 
     /**
@@ -57,11 +73,100 @@ public class CSVProcessor {
      * @throws IOException
      */
     public void load(File file) throws IOException {
+        ParseMetrics metrics = begin("load");
+        int loaded = lines.size();
         try (BufferedReader br =
                      new BufferedReader(new FileReader(file))) {
             String line;
             while ((line = br.readLine()) != null) lines.add(line);
+        } catch (IOException e) {
+            end(metrics, e);
+            throw e;
+        }
+        if (metrics != null) {
+            metrics.setBytes(file.length());
+            metrics.setLines(lines.size() - loaded);     // records are counted by parsing
+            end(metrics, null);
+        }
+    }
+
+    /**
+     * Parses the .csv file, mapped into memory, without loading its lines.
+     * The file is read as UTF-8 bytes and is not decoded before parsing.
+     * A filtered file is decoded and parsed chunk by chunk, so symbols of
+     * the other columns are not copied
+     * @param file the file
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    public void parseMapped(File file) throws IOException {
+        ParseMetrics metrics = begin("parseMapped");
+        if (filter != null) {
+            parseDecoded(file, metrics);
+            return;
+        }
+
+        Rejects rejects = rejects();
+        try (MappedCSVReader reader = new MappedCSVReader(file.toPath(), MappedCSVReader.DEFAULT_WINDOW_SIZE, dialect)) {
+            reader.setLenient(rejects);
+            reader.read(rejects == null ? table::addRow : this::addRow, metrics);
+        } catch (CSVParseException | IOException e) {
+            end(metrics, e);
+            throw e;
         }
+        end(metrics, null);
+    }
+
+    /**
+     * Parses the .csv file on all cores of the common pool, the file is
+     * mapped into memory and read as UTF-8 bytes. A lenient or filtering
+     * processor parses the file as parseMapped(), so bad rows are
+     * rejected in order of their lines
+     * @param file the file
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    public void parseParallel(File file) throws IOException {
+        if (rejectHandler != null || filter != null) {
+            parseMapped(file);
+            return;
+        }
+
+        ParseMetrics metrics = begin("parseParallel");
+        try {
+            table.addAll(new ParallelCSVParser(ForkJoinPool.commonPool(), 0, dialect)
+                    .parseTable(file.toPath(), schema, metrics));
+        } catch (CSVParseException | IOException e) {
+            end(metrics, e);
+            throw e;
+        }
+        end(metrics, null);
+    }
+
+    /**
+     * Opens a growing .csv file for incremental parsing. Each refresh
+     * of the tailer appends only the new records to the parsed fields.
+     * When the file is rotated the parsed fields are cleared, so they
+     * hold the records of the current file only and the rows, which are
+     * parsed again, are not duplicated
+     * @param file the file
+     * @return the tailer, nothing is parsed until its first refresh
+     * @throws IOException
+     */
+    public CSVTailer tail(File file) throws IOException {
+        return new CSVTailer(file.toPath(), table::addRow, CSVTailer.DEFAULT_BUFFER_SIZE, dialect, table::clear);
+    }
+
+    /**
+     * Publishes records of the .csv file in batches without storing them.
+     * The file is read only as fast as the subscriber requests batches
+     * @param file the file
+     * @param batchSize maximal number of records in a batch
+     * @return the publisher, nothing is read until a subscriber requests batches
+     * @throws IOException
+     */
+    public CSVPublisher publish(File file, int batchSize) throws IOException {
+        return CSVPublisher.open(file.toPath(), Charset.defaultCharset(), dialect, batchSize, ForkJoinPool.commonPool());
     }
 
     /**
@@ -80,349 +185,414 @@ public class CSVProcessor {
     }
 
     /**
-     * Serializes ArrayList of .csv lines
+     * Saves parsed fields as a .csv file, fields are quoted only where
+     * it is needed to parse them back
+     * @param file the file
+     * @throws IOException
+     */
+    public void export(File file) throws IOException {
+        ParseMetrics metrics = begin("export");
+        try (CSVWriter writer = CSVWriter.open(file.toPath(), Charset.defaultCharset(), dialect)) {
+            writer.write(table);
+        } catch (IOException e) {
+            end(metrics, e);
+            throw e;
+        }
+        if (metrics != null) {
+            metrics.setBytes(file.length());
+            metrics.setRecords(table.getRowCount());
+            end(metrics, null);
+        }
+    }
+
+    /**
+     * Writes parsed fields into a binary snapshot. Lines, which are
+     * loaded but not parsed yet, are parsed first
      * @param file destination
      * @throws IOException
+     * @throws CSVParseException error occurred during parsing
      */
     public void serialize(File file) throws IOException {
-        try (ObjectOutputStream oos =
-                     new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(lines);
+        if (table.getColumnCount() == 0 && !lines.isEmpty()) parse();
+        ParseMetrics metrics = begin("serialize");
+        try {
+            CSVSnapshot.write(table, file.toPath());
+        } catch (IOException e) {
+            end(metrics, e);
+            throw e;
+        }
+        if (metrics != null) {
+            metrics.setBytes(file.length());
+            metrics.setRecords(table.getRowCount());
+            end(metrics, null);
         }
     }
 
     /**
-     * Deserializes ArrayList of .csv lines
+     * Loads parsed fields from a binary snapshot, the fields are read
+     * from the mapped file and are not parsed again. The schema of the
+     * snapshot replaces the schema of the processor
      * @param file source
-     * @throws IOException
+     * @throws IOException the file is not a valid snapshot
      */
     public void deserialize(File file) throws IOException {
-        try (ObjectInputStream ois =
-                     new ObjectInputStream(new FileInputStream(file))) {
-            try {
-                //noinspection unchecked
-                lines = (ArrayList<String>) ois.readObject();
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            }
-
+        ParseMetrics metrics = begin("deserialize");
+        try {
+            table = CSVSnapshot.read(file.toPath());
+        } catch (IOException e) {
+            end(metrics, e);
+            throw e;
+        }
+        schema = table.getSchema();
+        lines.clear();
+        if (metrics != null) {
+            metrics.setBytes(file.length());
+            metrics.setRecords(table.getRowCount());
+            end(metrics, null);
         }
     }
 
     /**
-     * Outputs all .csv lines
+     * Outputs all .csv lines, or fields of the rows if the fields
+     * were loaded from a snapshot
      */
     public void printData() {
-        lines.forEach(System.out::println);
+        if (!lines.isEmpty()) {
+            lines.forEach(System.out::println);
+            return;
+        }
+
+        List<String> header = table.getHeader();
+        if (header != null) System.out.println(String.join(", ", header));
+        table.asLists().forEach(row -> System.out.println(String.join(", ", row)));
     }
 
     /**
-     * Returns current csvFields
+     * Returns a copy of current csvFields, it doesn't change with the
+     * next input. getTable().asLists() gives a view without copying
      * @return two-dimensional array of strings
      */
     public ArrayList<ArrayList<String>> getCsvFields() {
-        ArrayList<ArrayList<String>> fields = new ArrayList<>();
-        for (int i = 0; i < csvFields.size(); i++) {
-            fields.add(new ArrayList<>());
-            for (int j = 0; j < csvFields.get(i).size(); j++) {
-                fields.get(i).add(csvFields.get(i).get(j).toString());
-            }
+        ParseMetrics metrics = begin("getCsvFields");
+        ArrayList<ArrayList<String>> fields = table.toLists();
+        if (metrics != null) {
+            metrics.setRecords(table.getRowCount());
+            end(metrics, null);
         }
-
         return fields;
     }
 
     /**
-     * parse lines of the a file
+     * Declares types of the columns, typed fields are decoded while the
+     * file is parsed. Previously parsed fields are discarded
+     * @param schema the schema, null if all the columns are text
      */
-    public void parse() {
-        Automate automate = new Automate();
-        curSymb = 0;                            // any symbol is appropriate
-
-        for (String line : lines) {
-            int i = 0;
-            while (i < line.length()) {
-                col++;
-                if (curSymb == '\n') {
-                    automate.nextState(curSymb);                    curSymb = 0;
-                } else {
-                    curSymb = line.charAt(i++);
-                    automate.nextState(curSymb);
-                }
-            }
-
-            curSymb = '\n';                             // explicitly add new line char
-            row++;
-            col = -1;
-        }
-
-        addNewLine();
+    public void setSchema(CSVSchema schema) {
+        this.schema = schema;
+        table = new CSVTable(tableSchema());
+        automate = null;
     }
 
     /**
-     * Appends curSymb to a curField
+     * Sets special symbols of the file, which are used by parsing and export
+     * @param dialect the dialect
      */
-    private void appendSymb() {
-        curField.append(curSymb);
+    public void setDialect(CSVDialect dialect) {
+        this.dialect = dialect;
+        automate = null;
     }
 
     /**
-     * Appends trailing spaces and tabs to a curField
+     * Returns special symbols of the file
+     * @return the dialect
      */
-    private void appendTrailingSpacesToField() {
-        curField.append(trailSpaces);
+    public CSVDialect getDialect() {
+        return dialect;
     }
 
     /**
-     * Adds trailing spaces to the trailSpaces string
+     * Makes parsing lenient: a row with a bad symbol, a wrong number of
+     * fields or an undecodable typed field is passed to the handler and
+     * parsing goes on from the next line. The error, which exceeds the
+     * limit, stops parsing as usual
+     * @param handler receiver of the rejected rows, null to stop on the first error
+     * @param maxErrors maximal number of rejected rows of a parsing
      */
-    private void addTrailingSpacesToString() {
-        trailSpaces.append(curSymb);
+    public void setLenient(RejectHandler handler, int maxErrors) {
+        if (maxErrors < 0) throw new IllegalArgumentException("Limit of errors must not be negative");
+
+        rejectHandler = handler;
+        this.maxErrors = maxErrors;
+        automate = null;
     }
 
     /**
-     * Clears trailSpaces string
+     * Selects columns and rows, which are parsed. The schema declares the
+     * selected columns, the header is the first line if the schema or the
+     * filter needs it, and the table keeps its selected names as the
+     * header. If the filter adds or removes the header of the table,
+     * previously parsed fields are discarded
+     * @param filter the filter, null to parse all the records
      */
-    private void clearTrailingSpaces() {
-        if (trailSpaces.length() > 0) {
-            trailSpaces.delete(0, trailSpaces.length() - 1);
-        }
+    public void setFilter(CSVFilter filter) {
+        this.filter = filter;
+        CSVSchema tableSchema = tableSchema();
+        if (hasHeader(tableSchema) != hasHeader(table.getSchema())) table = new CSVTable(tableSchema);
+        automate = null;
     }
 
     /**
-     * Adds a curField to a curLine
+     * Returns the selection of columns and rows
+     * @return the filter, null if all the records are parsed
      */
-    private void addNewField() {
-        curLine.add(curField);
-        curField = new StringBuilder();
+    public CSVFilter getFilter() {
+        return filter;
     }
 
     /**
-     * Adds new Line to the csvFields
+     * Returns number of rows rejected by the last parsing
+     * @return the number, 0 if parsing is not lenient
      */
-    private void addNewLine() {
-        if (curField != null) {
-            addNewField();
-        }
-
-        if (csvFields.size() > 0) {
-            if (curLine.size() > csvFields.get(csvFields.size() - 1).size()) {
-                throw new CSVParseException("Too much fields", row - 1);
-            } else if (curLine.size() < csvFields.get(csvFields.size() - 1).size()) {
-                throw new CSVParseException("Not enough fields", row - 1);
-            }
-        }
-
-        csvFields.add(curLine);
-        curLine = new ArrayList<StringBuilder>();
+    public int getRejectedCount() {
+        return rejects == null ? 0 : rejects.getCount();
     }
 
     /**
-     * class Automate describes Automaton for csv file parsing
+     * Adds a receiver of the metrics of the stages
+     * @param listener the receiver
      */
-    private class Automate {
-        // map from (State; Symbol) to (State; parser.Action)
-        private Map<Pair<State, SymbolClass>, Pair<State, Action>> automate;
-
-        // current state inside the Automaton
-        private State curState;
+    public void addListener(ParseListener listener) {
+        listeners.add(listener);
+    }
 
-        // list of states
-        private ArrayList<State> states;
+    /**
+     * Removes a receiver of the metrics of the stages
+     * @param listener the receiver
+     */
+    public void removeListener(ParseListener listener) {
+        listeners.remove(listener);
+    }
 
-        //list of actions
-        private ArrayList<Action> actions;
+    /**
+     * Returns parsed fields stored by columns
+     * @return the table
+     */
+    public CSVTable getTable() {
+        return table;
+    }
 
-        /**
-         * creates new automate with states actions and nodes between states
-         */
-        public Automate() {
-            automate = new HashMap<>();
-            states = new ArrayList<>();
-            actions = new ArrayList<>();
+    /**
+     * parse lines of the a file
+     */
+    public void parse() {
+        ParseMetrics metrics = begin("parse");
+        Automate automate = automate();
 
-            for (int i = 0; i < 8; i++) {
-                states.add(i, new State(i));        // initialize states 0 through 7
+        long symbols = 0;
+        try {
+            for (String line : lines) {
+                automate.feed(line);
+                automate.endLine();
+                symbols += line.length() + 1;
             }
 
-            // set initial state
-            curState = states.get(0);
-
-
-            actions.add( () -> {                                   // 0
-                appendSymb();
-                clearTrailingSpaces();
-            });
-            actions.add( () -> {                                   // 1
-                appendTrailingSpacesToField();
-                clearTrailingSpaces();
-                appendSymb();
-            });
-            actions.add( () -> addTrailingSpacesToString() );      // 2
-            actions.add( () -> addNewField() );                    // 3
-            actions.add( () -> addNewLine() );                     // 4
-
-            actions.add(() -> {                                    // 5 exception
-                throw new CSVParseException("Unexpected symbol ' "+ curSymb+ " ' ", row, col);
-            });
-
-            actions.add( () -> {                                    // 6, empty action
-            });
-
-
-            put(states.get(0), 'A',  states.get(1), actions.get(0));
-            put(states.get(0), ',',  states.get(0), actions.get(3));
-            put(states.get(0), '\n', states.get(0), actions.get(4));
-            put(states.get(0), '"',  states.get(2), actions.get(6));
-            put(states.get(0), ' ',  states.get(6), actions.get(6));
-
-            put(states.get(1), 'A',  states.get(1), actions.get(0));
-            put(states.get(1), ',',  states.get(0), actions.get(3));
-            put(states.get(1), '\n', states.get(0), actions.get(4));
-            put(states.get(1), '"',  states.get(7), actions.get(5));     // exception
-
-            put(states.get(2), 'A',  states.get(2), actions.get(0));
-            put(states.get(2), ',',  states.get(2), actions.get(0));
-            put(states.get(2), ' ',  states.get(2), actions.get(0));
-            put(states.get(2), '\n', states.get(2), actions.get(0));
-            put(states.get(2), '"',  states.get(3), actions.get(6));
-
-            put(states.get(3), '"',  states.get(2), actions.get(0));
-            put(states.get(3), '\n', states.get(0), actions.get(4));
-            put(states.get(3), ',',  states.get(0), actions.get(3));
-            put(states.get(3), ' ',  states.get(4), actions.get(6));
-            put(states.get(3), 'A',  states.get(7), actions.get(5));     // exception
-
-            put(states.get(4), ' ',  states.get(4), actions.get(6));
-            put(states.get(4), 'A',  states.get(7), actions.get(5));     // exception
-            put(states.get(4), '"',  states.get(7), actions.get(5));     // exception
-            put(states.get(4), '"',  states.get(7), actions.get(5));     // exception
-            put(states.get(4), ',',  states.get(0), actions.get(3));
-            put(states.get(4), '\n', states.get(0), actions.get(4));
-
-            put(states.get(1), ' ',  states.get(5), actions.get(2));
-            put(states.get(5), ' ',  states.get(5), actions.get(2));
-            put(states.get(5), 'A',  states.get(0), actions.get(1));
-            put(states.get(5), '\n', states.get(0), actions.get(4));
-            put(states.get(5), ',',  states.get(0), actions.get(3));
-            put(states.get(5), '"',  states.get(7), actions.get(5));    // exception
-
-            put(states.get(6), ' ',  states.get(6), actions.get(6));
-            put(states.get(6), 'A',  states.get(1), actions.get(0));
-            put(states.get(6), '"',  states.get(2), actions.get(6));
-            put(states.get(6), ',',  states.get(0), actions.get(3));
-            put(states.get(6), '\n', states.get(0), actions.get(4));
+            automate.finish();
+        } catch (CSVParseException e) {
+            end(metrics, automate, symbols, e);
+            throw e;
         }
+        end(metrics, automate, symbols, null);
+    }
 
-        /**
-         * Defines next state from the curState and symbol
-         * @param symbol symbol that is used to define state
-         */
-        public void nextState(char symbol) {
-            Pair<State, SymbolClass> key = new Pair<>(curState, (new SymbolClass(symbol)));
-            Pair<State, Action> value = automate.get(key);
-            curState = value.getFirst();
-            value.getSecond().act();
+    /**
+     * Parses a csv text, e.g. a body of a request, without loading it as
+     * lines. Records are appended to the parsed fields, so they must have
+     * as many fields as the records of the previous texts; line numbers
+     * of the errors are counted from the start of the text
+     * @param data the text
+     * @throws CSVParseException error occurred during parsing, or a record
+     * has another number of fields than the parsed ones
+     */
+    public void parse(CharSequence data) {
+        ParseMetrics metrics = begin("parse");
+        Automate automate = automate();
+        try {
+            automate.feed(data);
+            automate.finish();
+        } catch (CSVParseException e) {
+            end(metrics, automate, data.length(), e);
+            throw e;
         }
+        end(metrics, automate, data.length(), null);
+    }
 
-        /**
-         * Put new key value pair into the automaton
-         * @param startState start state
-         * @param symb symbol that defines the next state
-         * @param finalState final state
-         * @param action action when finalState is reached
-         */
-        private void put(State startState, char symb,
-                         State finalState, Action action) {
-
-            automate.put(new Pair<>(startState, new SymbolClass(symb)),
-                    new Pair<State, Action>(finalState, action));
-        }
+    /**
+     * Discards loaded lines and parsed fields, so the processor can parse
+     * the next input. The schema and the dialect are kept, as well as the
+     * buffers of the automate and the table, so views of the table, e.g.
+     * its fields and asLists(), are valid only until the reset
+     */
+    public void reset() {
+        lines.clear();
+        table.clear();
+        if (automate != null) automate.reset();
+    }
 
-        /**
-         * Class pair for pair abstraction
-         * @param <F> type of the first element in pair
-         * @param <S> type of the second element in pair
-         */
-        private class Pair<F, S> {
-            private F first;    //first member of the pair
-            private S second;   //second member of the pair
-
-            public Pair(F first, S second) {
-                this.first = first;
-                this.second = second;
-            }
+    /**
+     * Starts measuring a stage, if somebody listens
+     * @param stage name of the stage
+     * @return metrics of the stage, null if nobody listens
+     */
+    private ParseMetrics begin(String stage) {
+        if (listeners.isEmpty() && !isRecording()) return null;
+        return new ParseMetrics(stage);
+    }
 
-            public F getFirst() {
-                return first;
-            }
+    /**
+     * Completes measuring a stage of the automate
+     * @param metrics metrics of the stage, null if nobody listens
+     * @param automate the automate
+     * @param symbols number of the parsed symbols
+     * @param error error, which stopped the stage, null if it is completed
+     */
+    private void end(ParseMetrics metrics, Automate automate, long symbols, Exception error) {
+        if (metrics == null) return;
+        metrics.setBytes(symbols);
+        automate.addCounters(metrics);
+        end(metrics, error);
+    }
 
-            public S getSecond() {
-                return second;
-            }
+    /**
+     * Completes measuring a stage and passes its metrics to the listeners
+     * @param metrics metrics of the stage, null if nobody listens
+     * @param error error, which stopped the stage, null if it is completed
+     */
+    private void end(ParseMetrics metrics, Exception error) {
+        if (metrics == null) return;
+        metrics.finish(error);
+        if (FlightRecorder.isInitialized()) ParseStageEvent.commit(metrics);
+        for (ParseListener listener : listeners) {
+            listener.stageCompleted(metrics);
+        }
+    }
 
-            @Override
-            public int hashCode() {
-                return (first.hashCode() + second.hashCode()) / 2;
-            }
+    /**
+     * Checks if a flight recording enabled the event of the stages. The
+     * event class is loaded only once the recorder is initialized, loading
+     * an event class is expensive
+     * @return true if the event is enabled
+     */
+    private static boolean isRecording() {
+        return FlightRecorder.isInitialized() && ParseStageEvent.isRecording();
+    }
 
-            @SuppressWarnings("unchecked")
-            @Override
-            public boolean equals(Object obj) {
-                if (! (obj instanceof Pair)) return false;
-                if (obj == this) return true;
-                return this.first.equals(((Pair<F, S>) obj).first)
-                        && this.second.equals(((Pair<F, S>) obj).second);
-            }
-        }
+    /**
+     * Returns the schema of the table: the declared one, with the header
+     * if the filter finds columns by names
+     * @return the schema, null if all the columns are text and there is no header
+     */
+    private CSVSchema tableSchema() {
+        if (filter == null || !filter.needsHeader()) return schema;
+        return schema == null ? CSVSchema.text(true) : schema.withHeader();
+    }
 
-        /**
-         * Class that defines an automaton state
-         */
-        private class State {
-            private int number;
-            public State(int number) {
-                this.number = number;
-            }
+    /**
+     * Checks if the first line is a header
+     * @param schema the schema, null if there is none
+     * @return true if the schema has a header
+     */
+    private static boolean hasHeader(CSVSchema schema) {
+        return schema != null && schema.hasHeader();
+    }
 
-            @Override
-            public int hashCode() {
-                return ((Integer)number).hashCode();
-            }
+    /**
+     * Returns the automate of the dialect in the initial state
+     * @return the automate
+     */
+    private Automate automate() {
+        if (automate == null) {
+            automate = rejectHandler == null
+                    ? new Automate(dialect.table(), record -> table.addRow(record))
+                    : new Automate(dialect.table(), this::addRow);
+            if (filter != null) automate.setFilter(filter, tableSchema());
+        } else {
+            automate.reset();
+        }
+        automate.setLenient(rejects());
+        return automate;
+    }
 
-            @Override
-            public boolean equals(Object obj) {
-                if (! (obj instanceof State)) return false;
-                if (obj == this) return true;
-                return number == ((State)obj).number;
+    /**
+     * Decodes the .csv file as UTF-8 and parses it chunk by chunk
+     * @param file the file
+     * @param metrics metrics of the stage, null if nobody listens
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    private void parseDecoded(File file, ParseMetrics metrics) throws IOException {
+        Automate automate = automate();
+        char[] chunk = new char[CSVReader.DEFAULT_CHUNK_SIZE];
+
+        long symbols = 0;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            int len;
+            while ((len = reader.read(chunk)) >= 0) {
+                automate.feed(chunk, 0, len);
+                symbols += len;
             }
+
+            automate.finish();
+        } catch (CSVParseException | IOException e) {
+            end(metrics, automate, symbols, e);
+            throw e;
         }
+        end(metrics, automate, symbols, null);
+    }
 
-        /**
-         * Class for class of the symbols definition
-         */
-        private class SymbolClass {
-            private int symbClass;
-
-            public SymbolClass(char symbol) {
-                if (symbol == ',') symbClass = 'B';
-                else if (symbol == '"') symbClass = 'C';
-                else if (symbol == ' ' || symbol == '\t') symbClass = 'D';
-                else if (symbol == '\n') symbClass = 'E';
-                else symbClass = 'A';
-            }
+    /**
+     * Starts counting rejected rows of a parsing
+     * @return the counter, null if parsing is not lenient
+     */
+    private Rejects rejects() {
+        rejects = rejectHandler == null ? null : new Rejects(rejectHandler, maxErrors);
+        return rejects;
+    }
 
-            @Override
-            public int hashCode() {
-                return ((Integer)symbClass).hashCode();
-            }
+    /**
+     * Appends a record to the table, a record with an undecodable
+     * typed field is rejected
+     * @param record the record
+     */
+    private void addRow(CSVRecord record) {
+        try {
+            table.addRow(record);
+        } catch (CSVParseException e) {
+            rejects.reject(e, record.toList());
+        }
+    }
 
-            @Override
-            public boolean equals(Object obj) {
-                if (! (obj instanceof SymbolClass)) return false;
-                if (obj == this) return true;
-                return symbClass == ((SymbolClass)obj).symbClass;
-            }
+    /**
+     * Appends a record to the table, a record with an undecodable
+     * typed field is rejected
+     * @param record the record
+     */
+    private void addRow(MappedRecord record) {
+        try {
+            table.addRow(record);
+        } catch (CSVParseException e) {
+            rejects.reject(e, record.toList());
         }
     }
+
+    /**
+     * Parses a csv stream without loading it, the stream is read in chunks
+     * and each record is passed to the handler as soon as it is parsed
+     * @param reader source of symbols
+     * @param handler receiver of the records
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    public static void parse(Reader reader, RecordHandler handler) throws IOException {
+        new CSVReader(reader).read(handler);
+    }
 }
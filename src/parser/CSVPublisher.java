@@ -0,0 +1,267 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The parser.CSVPublisher class publishes records of a csv stream to a
+ * single Flow.Subscriber in batches. Reading is driven by demand: a
+ * chunk is read and parsed only while the subscriber has requested
+ * batches, which are not delivered yet, so a slow subscriber throttles
+ * reading instead of filling the heap. Each requested item is a batch
+ * of at most batchSize records, only the last batch may be shorter.
+ * Completion and errors need no demand, they follow the last batch.
+ * Signals are sent from the executor, one at a time. Cancellation
+ * closes the stream before the next chunk is read
+ */
+public class CSVPublisher implements Flow.Publisher<List<ArrayList<String>>> {
+    // default number of records in a batch
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    // source of records
+    private final CSVReader reader;
+
+    // maximal number of records in a batch
+    private final int batchSize;
+
+    // executor, which reads the stream and sends the signals
+    private final Executor executor;
+
+    // the stream is read only once
+    private final AtomicBoolean subscribed;
+
+    /**
+     * Creates a publisher with default batch size, which runs in the common pool
+     * @param reader source of records
+     */
+    public CSVPublisher(CSVReader reader) {
+        this(reader, DEFAULT_BATCH_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a publisher
+     * @param reader source of records, it is closed once the records are published
+     * @param batchSize maximal number of records in a batch
+     * @param executor executor, which reads the stream and sends the signals
+     */
+    public CSVPublisher(CSVReader reader, int batchSize, Executor executor) {
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be positive");
+
+        this.reader = reader;
+        this.batchSize = batchSize;
+        this.executor = executor;
+        subscribed = new AtomicBoolean();
+    }
+
+    /**
+     * Opens a publisher of the file in the default charset
+     * @param path the file
+     * @return the publisher
+     * @throws IOException
+     */
+    public static CSVPublisher open(Path path) throws IOException {
+        return new CSVPublisher(CSVReader.open(path));
+    }
+
+    /**
+     * Opens a publisher of the file
+     * @param path the file
+     * @param charset charset of the file
+     * @param dialect dialect of the file
+     * @param batchSize maximal number of records in a batch
+     * @param executor executor, which reads the file and sends the signals
+     * @return the publisher
+     * @throws IOException
+     */
+    public static CSVPublisher open(Path path, Charset charset, CSVDialect dialect,
+                                    int batchSize, Executor executor) throws IOException {
+        return new CSVPublisher(CSVReader.open(path, charset, dialect), batchSize, executor);
+    }
+
+    /**
+     * Subscribes the only subscriber, the next ones get an error
+     * @param subscriber receiver of the batches
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<ArrayList<String>>> subscriber) {
+        if (subscriber == null) throw new NullPointerException("Subscriber is null");
+
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Records are already published"));
+            return;
+        }
+
+        Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Subscription of the only subscriber. Requests and cancellation
+     * schedule a drain, which runs in the executor, and drains never
+     * overlap, so the reader is used by one thread at a time
+     */
+    private final class Subscription implements Flow.Subscription, Runnable {
+        // receiver of the batches
+        private final Flow.Subscriber<? super List<ArrayList<String>>> subscriber;
+
+        // number of requested batches, which are not delivered yet
+        private final AtomicLong requested;
+
+        // number of scheduled drains
+        private final AtomicInteger scheduled;
+
+        // the subscriber cancelled the subscription
+        private volatile boolean cancelled;
+
+        // error of a request, which is sent by the next drain
+        private volatile Throwable requestError;
+
+        // terminal signal is sent and the reader is closed
+        private boolean done;
+
+        Subscription(Flow.Subscriber<? super List<ArrayList<String>>> subscriber) {
+            this.subscriber = subscriber;
+            requested = new AtomicLong();
+            scheduled = new AtomicInteger();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("Number of requested batches must be positive");
+            } else {
+                requested.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = scheduled.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Runs a drain, unless one is already running
+         */
+        private void schedule() {
+            if (scheduled.getAndIncrement() == 0) executor.execute(this);
+        }
+
+        /**
+         * Reads and delivers batches while they are requested
+         */
+        private void drain() {
+            if (done) return;
+            if (cancelled) {
+                finish(null, false);
+                return;
+            }
+            if (requestError != null) {
+                finish(requestError, true);
+                return;
+            }
+
+            while (requested.get() > 0) {
+                List<ArrayList<String>> batch = new ArrayList<>(Math.min(batchSize, 1024));
+                Throwable error = null;
+                try {
+                    while (batch.size() < batchSize && !cancelled && reader.hasNext()) {
+                        batch.add(reader.next());
+                    }
+                } catch (UncheckedIOException e) {
+                    error = e.getCause();
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                if (cancelled) {
+                    finish(null, false);
+                    return;
+                }
+
+                // records parsed before an error are delivered first
+                if (!batch.isEmpty()) {
+                    requested.decrementAndGet();
+                    try {
+                        subscriber.onNext(batch);
+                    } catch (RuntimeException e) {
+                        finish(null, false);            // broken subscriber is cancelled
+                        return;
+                    }
+                }
+                if (error != null || batch.size() < batchSize) {
+                    finish(error, true);                // the stream is over
+                    return;
+                }
+
+                // terminal signals need no demand, so the end after a full batch is not held back
+                try {
+                    if (!reader.hasNext()) {
+                        finish(null, true);
+                        return;
+                    }
+                } catch (UncheckedIOException e) {
+                    finish(e.getCause(), true);
+                    return;
+                } catch (RuntimeException e) {
+                    finish(e, true);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Closes the reader and sends the terminal signal
+         * @param error the error, null if the stream is over or cancelled
+         * @param signal true if the subscriber is signalled
+         */
+        private void finish(Throwable error, boolean signal) {
+            done = true;
+            try {
+                reader.close();
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+            if (!signal) return;
+
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
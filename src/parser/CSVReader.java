@@ -0,0 +1,231 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The parser.CSVReader class parses a csv stream without buffering
+ * the whole input. Symbols are read in chunks of a fixed size and
+ * fed to the automate, so memory use does not depend on the size of
+ * the input. Records are either pulled one by one as an Iterator
+ * or pushed into a parser.RecordHandler
+ */
+public class CSVReader implements Iterator<ArrayList<String>>, Closeable {
+    // default size of the read chunk
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    // source of symbols
+    private final Reader reader;
+
+    // buffer for the read chunk
+    private final char[] chunk;
+
+    // automate which keeps parsing state between chunks
+    private final Automate automate;
+
+    // records parsed from the last chunk, but not returned yet
+    private final ArrayDeque<ArrayList<String>> parsed;
+
+    // numbers of the lines, where parsed records end
+    private final ArrayDeque<Integer> parsedLines;
+
+    // receiver of the parsed records
+    private RecordHandler handler;
+
+    // input is over and the last line is passed to the handler
+    private boolean finished;
+
+    /**
+     * Creates a reader with default chunk size
+     * @param reader source of symbols
+     */
+    public CSVReader(Reader reader) {
+        this(reader, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a reader
+     * @param reader source of symbols
+     * @param chunkSize number of symbols read at once
+     */
+    public CSVReader(Reader reader, int chunkSize) {
+        this(reader, chunkSize, CSVDialect.DEFAULT);
+    }
+
+    /**
+     * Creates a reader of a dialect
+     * @param reader source of symbols
+     * @param chunkSize number of symbols read at once
+     * @param dialect dialect of the stream
+     */
+    public CSVReader(Reader reader, int chunkSize, CSVDialect dialect) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive");
+
+        this.reader = reader;
+        chunk = new char[chunkSize];
+        parsed = new ArrayDeque<>();
+        parsedLines = new ArrayDeque<>();
+        handler = record -> {
+            parsed.add(record.toList());
+            parsedLines.add(record.getLine());
+        };
+        automate = new Automate(dialect.table(), record -> handler.handle(record));
+    }
+
+    /**
+     * Creates a reader of the stream in the default charset
+     * @param in source of bytes
+     */
+    public CSVReader(InputStream in) {
+        this(new InputStreamReader(in));
+    }
+
+    /**
+     * Opens a reader of the file in the default charset
+     * @param path the file
+     * @return the reader
+     * @throws IOException
+     */
+    public static CSVReader open(Path path) throws IOException {
+        return open(path, Charset.defaultCharset());
+    }
+
+    /**
+     * Opens a reader of the file
+     * @param path the file
+     * @param charset charset of the file
+     * @return the reader
+     * @throws IOException
+     */
+    public static CSVReader open(Path path, Charset charset) throws IOException {
+        return open(path, charset, CSVDialect.DEFAULT);
+    }
+
+    /**
+     * Opens a reader of the file in a dialect
+     * @param path the file
+     * @param charset charset of the file
+     * @param dialect dialect of the file
+     * @return the reader
+     * @throws IOException
+     */
+    public static CSVReader open(Path path, Charset charset, CSVDialect dialect) throws IOException {
+        return new CSVReader(new InputStreamReader(Files.newInputStream(path), charset), DEFAULT_CHUNK_SIZE, dialect);
+    }
+
+    /**
+     * Makes parsing lenient: a row with a bad symbol or a wrong number
+     * of fields is passed to the handler and parsing goes on from the
+     * next line. The error, which exceeds the limit, stops parsing
+     * @param handler receiver of the rejected rows, null to stop on the first error
+     * @param maxErrors maximal number of rejected rows
+     */
+    public void setLenient(RejectHandler handler, int maxErrors) {
+        automate.setLenient(handler == null ? null : new Rejects(handler, maxErrors));
+    }
+
+    /**
+     * Selects columns and rows, symbols of the other columns and of the
+     * dropped rows are not copied. The filter must be set before reading.
+     * A filter by names reads them from the first line, its selected
+     * fields are the first record
+     * @param filter the filter, null to pass all the records
+     */
+    public void setFilter(CSVFilter filter) {
+        automate.setFilter(filter, null);
+    }
+
+    /**
+     * Parses the rest of the input and passes each record to the handler.
+     * Records are not copied, so the handler gets views, which are valid
+     * only during the call
+     * @param handler receiver of the records
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    public void read(RecordHandler handler) throws IOException {
+        // records, which are parsed already, but not pulled by next()
+        CSVRecord record = new CSVRecord();
+        while (!parsed.isEmpty()) {
+            ArrayList<String> line = parsed.poll();
+            StringBuilder[] fields = new StringBuilder[line.size()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = new StringBuilder(line.get(i));
+            }
+            record.set(fields, fields.length, parsedLines.poll());
+            handler.handle(record);
+        }
+
+        this.handler = handler;
+        while (!finished) {
+            readChunk();
+        }
+    }
+
+    /**
+     * Returns the rest of the records as a sequential stream
+     * @return stream of the records
+     */
+    public Stream<ArrayList<String>> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Checks if there are more records
+     * @return true if the next record exists
+     * @throws UncheckedIOException error occurred while reading
+     * @throws CSVParseException error occurred during parsing
+     */
+    @Override
+    public boolean hasNext() {
+        try {
+            while (parsed.isEmpty() && !finished) {
+                readChunk();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return !parsed.isEmpty();
+    }
+
+    /**
+     * Returns the next record
+     * @return fields of the record
+     */
+    @Override
+    public ArrayList<String> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        parsedLines.poll();
+        return parsed.poll();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the next chunk and feeds it to the automate
+     * @throws IOException
+     */
+    private void readChunk() throws IOException {
+        int n = reader.read(chunk, 0, chunk.length);
+        if (n < 0) {
+            finished = true;
+            automate.finish();
+        } else {
+            automate.feed(chunk, 0, n);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.util.ArrayList;
+
+/**
+ * parser.CSVRecord is a view of a parsed line of a csv file.
+ * The view is reused by the automate for the next line, so
+ * its fields must be copied if they are needed later
+ */
+public final class CSVRecord {
+    // fields of the line
+    private StringBuilder[] fields;
+
+    // number of fields
+    private int size;
+
+    // number of the line, where the record ends
+    private int line;
+
+    /**
+     * Creates an empty view
+     */
+    CSVRecord() {
+    }
+
+    /**
+     * Points the view to the fields of the next record
+     * @param fields fields of the record
+     * @param size number of fields
+     * @param line number of the line, where the record ends
+     */
+    void set(StringBuilder[] fields, int size, int line) {
+        this.fields = fields;
+        this.size = size;
+        this.line = line;
+    }
+
+    /**
+     * Returns number of fields
+     * @return number of fields
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns number of the line, where the record ends
+     * @return number of the line
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns field without copying, valid only while the record is
+     * @param i index of the field
+     * @return symbols of the field
+     */
+    public CharSequence get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Field " + i + " of " + size);
+        return fields[i];
+    }
+
+    /**
+     * Returns copy of a field
+     * @param i index of the field
+     * @return the field
+     */
+    public String getString(int i) {
+        return get(i).toString();
+    }
+
+    /**
+     * Copies all the fields
+     * @return list of the fields
+     */
+    public ArrayList<String> toList() {
+        ArrayList<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(fields[i].toString());
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+}
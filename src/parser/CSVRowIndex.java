@@ -0,0 +1,355 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * parser.CSVRowIndex gives random access to the rows of a local file
+ * without parsing all of it. The file is scanned once for line
+ * separators outside quotes, and the offset of every block of rows is
+ * kept, so the index of a file with millions of rows takes a few
+ * hundred kilobytes. A row is read by parsing its block from the
+ * mapped file, the last decoded blocks are cached.
+ * The index is built by build(), which may run on a background thread
+ * while the rows, which are indexed already, are read
+ */
+public class CSVRowIndex implements Closeable {
+    // default number of rows in a block
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    // default number of cached blocks
+    public static final int DEFAULT_CACHED_BLOCKS = 64;
+
+    // number of indexed blocks, after which the progress is reported
+    private static final int PROGRESS_BLOCKS = 64;
+
+    // the file
+    private final FileChannel channel;
+
+    // dialect of the file
+    private final CSVDialect dialect;
+
+    // number of rows in a block
+    private final int blockSize;
+
+    // fields of the header, null if the file has no header
+    private final ArrayList<String> header;
+
+    // decoded blocks in order of access, the least recently used is dropped
+    private final Map<Integer, String[][]> cache;
+
+    // offsets of the blocks and offset after the last one
+    private long[] blockStarts;
+
+    // numbers of the first lines of the blocks
+    private int[] blockLines;
+
+    // number of indexed rows and their complete blocks
+    private int rows;
+    private int blocks;
+
+    // true once the whole file is indexed
+    private boolean built;
+
+    /**
+     * Opens a file with a header with default dialect and cache
+     * @param path the file
+     * @throws IOException
+     */
+    public CSVRowIndex(Path path) throws IOException {
+        this(path, CSVDialect.DEFAULT, true, DEFAULT_BLOCK_SIZE, DEFAULT_CACHED_BLOCKS);
+    }
+
+    /**
+     * Opens a file and reads its header, the rows are not indexed yet
+     * @param path the file
+     * @param dialect dialect of the file
+     * @param header true if the first line is the header
+     * @param blockSize number of rows, which are decoded at once
+     * @param cachedBlocks number of decoded blocks, which are kept
+     * @throws IOException
+     * @throws CSVParseException error occurred while parsing the header
+     */
+    public CSVRowIndex(Path path, CSVDialect dialect, boolean header,
+                       int blockSize, int cachedBlocks) throws IOException {
+        if (blockSize <= 0) throw new IllegalArgumentException("Block size must be positive");
+        if (cachedBlocks <= 0) throw new IllegalArgumentException("Number of cached blocks must be positive");
+
+        this.dialect = dialect;
+        this.blockSize = blockSize;
+        cache = new LinkedHashMap<Integer, String[][]>(cachedBlocks * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[][]> eldest) {
+                return size() > cachedBlocks;
+            }
+        };
+        blockStarts = new long[64];
+        blockLines = new int[64];
+
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.header = header ? readHeader() : null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the header
+     * @return fields of the header, null if the file has no header
+     */
+    public ArrayList<String> getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns number of the indexed rows, it grows while the index is built
+     * @return number of the rows
+     */
+    public synchronized int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Checks if the whole file is indexed
+     * @return true once build() is finished
+     */
+    public synchronized boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Scans the file and indexes its rows. Rows are readable as soon as
+     * their block is indexed
+     * @param progress receiver of the number of indexed rows, null if it is not needed
+     * @throws IOException
+     * @throws IllegalStateException the index is built already
+     */
+    public void build(IntConsumer progress) throws IOException {
+        synchronized (this) {
+            if (built || blocks > 0) throw new IllegalStateException("Index is built already");
+        }
+
+        long size = channel.size();
+        char quote = dialect.getQuote();
+        char escape = dialect.getEscape();
+        int headerLines = header != null ? 1 : 0;
+
+        // state of the scan, which goes on from window to window
+        boolean quoted = false;
+        boolean escaped = false;
+        boolean escapedLine = false;
+        boolean lineStart = true;
+        byte prev = 0;
+        int line = 1;
+        int row = 0;
+
+        for (long start = 0; start < size; start += MappedCSVReader.DEFAULT_WINDOW_SIZE) {
+            int length = (int) Math.min(MappedCSVReader.DEFAULT_WINDOW_SIZE, size - start);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+
+            for (int i = 0; i < length; i++) {
+                byte b = window.get(i);
+                boolean separator = b == '\r' || b == '\n';
+
+                // a non-empty line starts a row, empty lines at the start of the file are an empty row
+                if (lineStart && (!separator || start + i == 0)) {
+                    if (headerLines > 0) {
+                        headerLines--;
+                    } else {
+                        if (row % blockSize == 0) {
+                            addBlock(start + i, line, row);
+                            if (progress != null && (row / blockSize) % PROGRESS_BLOCKS == 0) {
+                                progress.accept(row);
+                            }
+                        }
+                        row++;
+                    }
+                    lineStart = false;
+                }
+
+                if (separator && (b == '\r' || prev != '\r')) line++;
+
+                // an escaped symbol is a part of the field, as in the transition table. An escaped
+                // separator takes the empty lines after it too, since the automate joins them
+                if (escaped) {
+                    escaped = false;
+                    escapedLine = separator;
+                } else if (separator) {
+                    if (!quoted && !escapedLine) lineStart = true;
+                } else {
+                    escapedLine = false;
+                    if (b == escape && escape != CSVDialect.NONE) {
+                        escaped = true;
+                    } else if (b == quote && quote != CSVDialect.NONE) {
+                        quoted = !quoted;
+                    }
+                }
+                prev = b;
+            }
+        }
+
+        synchronized (this) {
+            // the last block ends with the file
+            blocks = (row + blockSize - 1) / blockSize;
+            ensureBlocks();
+            blockStarts[blocks] = size;
+            rows = row;
+            built = true;
+        }
+        if (progress != null) progress.accept(row);
+    }
+
+    /**
+     * Returns a field
+     * @param row index of the row
+     * @param col index of the column
+     * @return the field, null if the row has no such column
+     * @throws IndexOutOfBoundsException the row is not indexed
+     * @throws UncheckedIOException error occurred while reading
+     * @throws CSVParseException error occurred during parsing
+     */
+    public String get(int row, int col) {
+        String[] fields = fields(row);
+        return col < fields.length ? fields[col] : null;
+    }
+
+    /**
+     * Returns fields of a row
+     * @param row index of the row
+     * @return fields of the row
+     * @throws IndexOutOfBoundsException the row is not indexed
+     * @throws UncheckedIOException error occurred while reading
+     * @throws CSVParseException error occurred during parsing
+     */
+    public ArrayList<String> getRow(int row) {
+        return new ArrayList<>(Arrays.asList(fields(row)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns fields of a row, decoding its block if it is not cached
+     * @param row index of the row
+     * @return fields of the row
+     */
+    private synchronized String[] fields(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Row " + row + " is not indexed, there are " + rows + " rows");
+        }
+
+        int block = row / blockSize;
+        String[][] decoded = cache.get(block);
+        if (decoded == null) {
+            int count = Math.min(blockSize, rows - block * blockSize);
+            try {
+                decoded = decode(blockStarts[block], blockStarts[block + 1], blockLines[block], count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cache.put(block, decoded);
+        }
+        return decoded[row % blockSize];
+    }
+
+    /**
+     * Adds a block to the index. A block is readable once the start of
+     * the next one is known, so the previous block is published here
+     * @param start offset of the first row of the block
+     * @param line number of the line of the first row
+     * @param row index of the first row
+     */
+    private synchronized void addBlock(long start, int line, int row) {
+        int block = row / blockSize;
+        blocks = block;
+        ensureBlocks();
+        blockStarts[block] = start;
+        blockLines[block] = line;
+        rows = row;
+    }
+
+    /**
+     * Grows the arrays of the blocks, so they have the block after the last one
+     */
+    private void ensureBlocks() {
+        if (blocks + 1 < blockStarts.length) return;
+
+        int length = blockStarts.length * 2;
+        blockStarts = Arrays.copyOf(blockStarts, length);
+        blockLines = Arrays.copyOf(blockLines, length);
+    }
+
+    /**
+     * Reads the header, which is the first non-empty line
+     * @return fields of the header
+     * @throws IOException
+     */
+    private ArrayList<String> readHeader() throws IOException {
+        ArrayList<String> fields = new ArrayList<>();
+        ByteAutomate automate = new ByteAutomate(dialect.table(), record -> {
+            if (fields.isEmpty()) fields.addAll(record.toList());
+        });
+
+        // lines are fed until the header is complete
+        long size = channel.size();
+        long pos = 0;
+        for (int length = 4096; fields.isEmpty() && pos < size; length *= 2) {
+            long to = Math.min(size, pos + length);
+            MappedCSVReader.feed(channel, pos, to, MappedCSVReader.DEFAULT_WINDOW_SIZE, automate);
+            automate.flushLine();
+            pos = to;
+        }
+        if (fields.isEmpty()) automate.finish();
+        return fields.isEmpty() ? null : fields;
+    }
+
+    /**
+     * Parses the rows of a block
+     * @param from offset of the first row
+     * @param to offset after the last row
+     * @param line number of the line of the first row
+     * @param count number of the rows
+     * @return fields of the rows
+     * @throws IOException
+     */
+    private String[][] decode(long from, long to, int line, int count) throws IOException {
+        String[][] decoded = new String[count][];
+        int[] decodedRows = new int[1];
+        ByteAutomate automate = new ByteAutomate(dialect.table(), record -> {
+            if (decodedRows[0] < count) {
+                String[] fields = new String[record.size()];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = record.getString(i);
+                }
+                decoded[decodedRows[0]++] = fields;
+            }
+        }, line);
+        MappedCSVReader.feed(channel, from, to, MappedCSVReader.DEFAULT_WINDOW_SIZE, automate);
+        automate.finish();
+
+        // a line of the index might be no record for the automate
+        for (int i = decodedRows[0]; i < count; i++) {
+            decoded[i] = new String[0];
+        }
+        return decoded;
+    }
+}
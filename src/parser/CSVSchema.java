@@ -0,0 +1,132 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * parser.CSVSchema declares types of the columns before parsing, so
+ * typed fields are decoded into primitive columns of parser.CSVTable
+ * while the file is parsed. The first line might be a header, which is
+ * kept as text; columns of the table are found by names of the header
+ * with or without regard to case
+ */
+public class CSVSchema {
+    // types of the columns, null if there are any number of text columns
+    private final ColumnType[] types;
+
+    // first line is a header
+    private final boolean header;
+
+    // names of the header are compared ignoring case
+    private final boolean ignoreCase;
+
+    /**
+     * Creates a schema without header
+     * @param types types of the columns
+     */
+    public CSVSchema(ColumnType... types) {
+        this(false, types);
+    }
+
+    /**
+     * Creates a schema
+     * @param header true if the first line is a header
+     * @param types types of the columns
+     */
+    public CSVSchema(boolean header, ColumnType... types) {
+        this(header, types.clone(), false);
+    }
+
+    private CSVSchema(boolean header, ColumnType[] types, boolean ignoreCase) {
+        this.header = header;
+        this.types = types;
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Creates a schema of any number of text columns
+     * @param header true if the first line is a header
+     * @return the schema
+     */
+    public static CSVSchema text(boolean header) {
+        return new CSVSchema(header, null, false);
+    }
+
+    /**
+     * Returns the same schema with another comparison of names
+     * @param ignoreCase true if names of the header are compared ignoring case
+     * @return the schema
+     */
+    public CSVSchema withIgnoreCase(boolean ignoreCase) {
+        return new CSVSchema(header, types, ignoreCase);
+    }
+
+    /**
+     * Returns number of the declared columns
+     * @return number of columns, -1 if there are any number of text columns
+     */
+    public int size() {
+        return types == null ? -1 : types.length;
+    }
+
+    /**
+     * Returns type of a column
+     * @param col index of the column
+     * @return type of the column
+     */
+    public ColumnType getType(int col) {
+        return types == null ? ColumnType.TEXT : types[col];
+    }
+
+    /**
+     * Checks if the first line is a header
+     * @return true if the first line is a header
+     */
+    public boolean hasHeader() {
+        return header;
+    }
+
+    /**
+     * Checks if names of the header are compared ignoring case
+     * @return true if case is ignored
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Returns the key of a name, by which names of the header are compared
+     * @param name name of a column
+     * @return the name, in lower case if case is ignored
+     */
+    String key(String name) {
+        return ignoreCase ? name.toLowerCase(Locale.ROOT) : name;
+    }
+
+    /**
+     * Returns the same schema with header
+     * @return the schema
+     */
+    CSVSchema withHeader() {
+        return header ? this : new CSVSchema(true, types, ignoreCase);
+    }
+
+    /**
+     * Returns the same schema without header
+     * @return the schema
+     */
+    CSVSchema withoutHeader() {
+        return header ? new CSVSchema(false, types, ignoreCase) : this;
+    }
+
+    @Override
+    public String toString() {
+        return (header ? "header, " : "") + (ignoreCase ? "ignoring case, " : "")
+                + (types == null ? "text" : Arrays.toString(types));
+    }
+}
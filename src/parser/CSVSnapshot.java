@@ -0,0 +1,651 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * parser.CSVSnapshot writes a parsed parser.CSVTable into a versioned
+ * binary file and loads it back with FileChannel.map, without parsing.
+ * Layout (big-endian):
+ * magic "CSVS", version, flags, rows, columns, column types, types of
+ * the schema, header, directory of (offset; length) of the columns, the
+ * columns and CRC32 of all the preceding bytes. The flags keep the
+ * header and ignoring case of the schema, so the loaded table finds its
+ * columns as the parsed one.
+ * A text column is stored plain (ends and symbols) or, if at most
+ * a half of its fields are distinct, as a dictionary of distinct fields
+ * and an id per row. Symbols take a byte if all of them are latin-1 and
+ * two bytes (UTF-16) otherwise. A typed column is a bitmap of nulls and an array of
+ * longs or doubles. Every size is checked against the file, so a damaged
+ * or forged snapshot is rejected with an IOException.
+ * The file is mapped, but the columns are copied into the arrays of the
+ * table and dictionaries are expanded, so loading takes as much heap as
+ * parsing; it only saves the parsing
+ */
+final class CSVSnapshot {
+    // first bytes of a snapshot, "CSVS"
+    private static final int MAGIC = 0x43535653;
+
+    // version of the layout, version 1 has no schema
+    private static final short VERSION = 2;
+    private static final short VERSION_NO_SCHEMA = 1;
+
+    // flag of the snapshot with a header
+    private static final byte HAS_HEADER = 1;
+
+    // flags of the schema: declared, with types of the columns, with a header, ignoring case
+    private static final byte HAS_SCHEMA = 2;
+    private static final byte TYPED_SCHEMA = 4;
+    private static final byte SCHEMA_HEADER = 8;
+    private static final byte IGNORE_CASE = 16;
+
+    // encodings of the text columns
+    private static final byte PLAIN = 0;
+    private static final byte DICTIONARY = 1;
+
+    // number of rows, which are checked before a dictionary is built completely
+    private static final int DICTIONARY_SAMPLE = 4096;
+
+    // flag of the text column, which symbols are stored in a byte (latin-1)
+    private static final byte NARROW = 0x10;
+
+    // size of the output buffer
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    // maximal size of a mapped window for the checksum
+    private static final int WINDOW_SIZE = 1024 * 1024 * 1024;
+
+    private CSVSnapshot() {
+    }
+
+    /**
+     * Writes the table
+     * @param table the table
+     * @param path destination
+     * @throws IOException
+     */
+    static void write(CSVTable table, Path path) throws IOException {
+        int rows = table.getRowCount();
+        int cols = table.getColumnCount();
+        List<String> header = table.getHeader();
+        CSVSchema schema = table.getSchema();
+        int schemaSize = schema == null ? -1 : schema.size();
+
+        // encode the columns first, so the directory is known before them
+        Column[] columns = new Column[cols];
+        for (int col = 0; col < cols; col++) {
+            columns[col] = encode(table, col);
+        }
+
+        byte[][] names = new byte[header == null ? 0 : cols][];
+        long headerSize = 4 + 2 + 1 + 1 + 4 + 4 + cols + 16L * cols + (schemaSize >= 0 ? 4 + schemaSize : 0);
+        for (int col = 0; col < names.length; col++) {
+            names[col] = header.get(col).getBytes(StandardCharsets.UTF_8);
+            headerSize += 4 + names[col].length;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.ensure(16);
+            out.buf.putInt(MAGIC);
+            out.buf.putShort(VERSION);
+            out.buf.put((byte) ((header == null ? 0 : HAS_HEADER) | schemaFlags(schema)));
+            out.buf.put((byte) 0);
+            out.buf.putInt(rows);
+            out.buf.putInt(cols);
+            for (int col = 0; col < cols; col++) {
+                out.ensure(1);
+                out.buf.put((byte) table.getType(col).ordinal());
+            }
+            if (schemaSize >= 0) {
+                out.ensure(4);
+                out.buf.putInt(schemaSize);
+                for (int col = 0; col < schemaSize; col++) {
+                    out.ensure(1);
+                    out.buf.put((byte) schema.getType(col).ordinal());
+                }
+            }
+            for (byte[] name : names) {
+                out.ensure(4);
+                out.buf.putInt(name.length);
+                out.putBytes(name);
+            }
+
+            long offset = headerSize;
+            for (Column column : columns) {
+                out.ensure(16);
+                out.buf.putLong(offset);
+                out.buf.putLong(column.size);
+                offset += column.size;
+            }
+
+            for (int col = 0; col < cols; col++) {
+                writeColumn(out, table, col, columns[col]);
+            }
+
+            out.flush();
+            ByteBuffer crc = ByteBuffer.allocate(4);
+            crc.putInt(0, (int) out.crc.getValue());
+            while (crc.hasRemaining()) channel.write(crc);
+        }
+    }
+
+    /**
+     * Loads a table
+     * @param path the snapshot
+     * @return the table
+     * @throws IOException the file can't be read or is not a valid snapshot
+     */
+    static CSVTable read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 20) throw corrupted("file is too short");
+            checkSum(channel, size - 4);
+
+            // the directory ends before the first column, so the header is mapped with it
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size - 4, WINDOW_SIZE));
+            if (head.getInt() != MAGIC) throw corrupted("not a snapshot");
+            short version = head.getShort();
+            if (version != VERSION && version != VERSION_NO_SCHEMA) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            byte flags = head.get();
+            boolean hasHeader = (flags & HAS_HEADER) != 0;
+            head.get();
+            int rows = head.getInt();
+            int cols = head.getInt();
+            if (rows < 0 || cols < 0 || head.remaining() < cols * 17L) throw corrupted("bad size");
+
+            ColumnType[] types = readTypes(head, cols);
+            CSVSchema schema = null;
+            if (version != VERSION_NO_SCHEMA && (flags & HAS_SCHEMA) != 0) {
+                boolean schemaHeader = (flags & SCHEMA_HEADER) != 0;
+                schema = (flags & TYPED_SCHEMA) != 0
+                        ? new CSVSchema(schemaHeader, readTypes(head, checkedLength(head, 1)))
+                        : CSVSchema.text(schemaHeader);
+                schema = schema.withIgnoreCase((flags & IGNORE_CASE) != 0);
+            }
+
+            ArrayList<String> header = null;
+            if (hasHeader) {
+                header = new ArrayList<>(cols);
+                for (int col = 0; col < cols; col++) {
+                    int len = checkedLength(head, 1);
+                    byte[] name = new byte[len];
+                    head.get(name);
+                    header.add(new String(name, StandardCharsets.UTF_8));
+                }
+            }
+
+            long[] offsets = new long[cols];
+            long[] lengths = new long[cols];
+            if (head.remaining() < cols * 16L) throw corrupted("bad directory");
+            for (int col = 0; col < cols; col++) {
+                offsets[col] = head.getLong();
+                lengths[col] = head.getLong();
+                if (offsets[col] < head.position() || lengths[col] < 0 || lengths[col] > Integer.MAX_VALUE
+                        || offsets[col] + lengths[col] > size - 4) {
+                    throw corrupted("bad directory");
+                }
+            }
+
+            char[][] chars = new char[cols][];
+            int[][] ends = new int[cols][];
+            long[][] longs = new long[cols][];
+            double[][] doubles = new double[cols][];
+            long[][] nulls = new long[cols][];
+            for (int col = 0; col < cols; col++) {
+                ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, offsets[col], lengths[col]);
+                try {
+                    if (types[col] == ColumnType.TEXT) {
+                        readText(buf, rows, col, chars, ends);
+                    } else {
+                        int words = (int) ((rows + 63L) >> 6);
+                        if (lengths[col] != words * 8L + rows * 8L) throw corrupted("bad column " + col);
+                        nulls[col] = new long[words];
+                        buf.asLongBuffer().get(nulls[col]);
+                        buf.position(buf.position() + nulls[col].length * 8);
+                        if (types[col] == ColumnType.DOUBLE) {
+                            doubles[col] = new double[rows];
+                            buf.asDoubleBuffer().get(doubles[col]);
+                        } else {
+                            longs[col] = new long[rows];
+                            buf.asLongBuffer().get(longs[col]);
+                        }
+                    }
+                } catch (BufferUnderflowException e) {
+                    throw corrupted("column " + col + " is too short");
+                }
+            }
+
+            return new CSVTable(schema, header, rows, types, chars, ends, longs, doubles, nulls);
+        }
+    }
+
+    /**
+     * Returns the flags of a schema
+     * @param schema the schema, null if there is none
+     * @return the flags
+     */
+    private static int schemaFlags(CSVSchema schema) {
+        if (schema == null) return 0;
+        return HAS_SCHEMA | (schema.size() >= 0 ? TYPED_SCHEMA : 0)
+                | (schema.hasHeader() ? SCHEMA_HEADER : 0) | (schema.isIgnoreCase() ? IGNORE_CASE : 0);
+    }
+
+    /**
+     * Reads types of the columns
+     * @param head the header of the snapshot
+     * @param cols number of the columns
+     * @return the types
+     * @throws IOException a type is not valid
+     */
+    private static ColumnType[] readTypes(ByteBuffer head, int cols) throws IOException {
+        if (head.remaining() < cols) throw corrupted("bad header");
+        ColumnType[] types = new ColumnType[cols];
+        ColumnType[] all = ColumnType.values();
+        for (int col = 0; col < cols; col++) {
+            int type = head.get();
+            if (type < 0 || type >= all.length) throw corrupted("bad type");
+            types[col] = all[type];
+        }
+        return types;
+    }
+
+    /**
+     * Chooses the encoding of a column and computes its size
+     * @param table the table
+     * @param col index of the column
+     * @return the encoded column
+     */
+    private static Column encode(CSVTable table, int col) {
+        int rows = table.getRowCount();
+        Column column = new Column();
+        if (table.getType(col) != ColumnType.TEXT) {
+            column.size = ((rows + 63L) >> 6) * 8 + rows * 8L;
+            return column;
+        }
+
+        char[] chars = table.textChars(col);
+        int[] ends = table.textEnds(col);
+        int charCount = rows == 0 ? 0 : ends[rows - 1];
+
+        // ids of the distinct fields, given up once there are too many of them
+        // or once the first rows are mostly distinct
+        HashMap<CSVField, Integer> ids = new HashMap<>();
+        int[] rowIds = new int[rows];
+        int dictChars = 0;
+        boolean plain = rows == 0;
+        for (int row = 0; row < rows && !plain; row++) {
+            if (ids.size() > rows / 2 || (row == DICTIONARY_SAMPLE && ids.size() > row / 2)) {
+                plain = true;
+                break;
+            }
+
+            CSVField field = new CSVField(chars, row == 0 ? 0 : ends[row - 1], ends[row]);
+            Integer id = ids.get(field);
+            if (id == null) {
+                id = ids.size();
+                ids.put(field, id);
+                dictChars += field.length();
+            }
+            rowIds[row] = id;
+        }
+
+        if (plain || ids.size() > rows / 2) {
+            column.narrow = isNarrow(chars, 0, charCount);
+            column.size = 1 + 4 + rows * 4L + charCount * (column.narrow ? 1L : 2L);
+            return column;
+        }
+
+        column.dictionary = new CSVField[ids.size()];
+        ids.forEach((field, id) -> column.dictionary[id] = field);
+        column.ids = rowIds;
+        column.dictChars = dictChars;
+        column.idWidth = ids.size() <= 256 ? 1 : ids.size() <= 65536 ? 2 : 4;
+        column.narrow = true;
+        for (CSVField field : column.dictionary) {
+            column.narrow &= isNarrow(chars, field.start(), field.end());
+        }
+        column.size = 1 + 1 + 4 + 4 + ids.size() * 4L + dictChars * (column.narrow ? 1L : 2L)
+                + (long) rows * column.idWidth;
+        return column;
+    }
+
+    /**
+     * Checks if symbols fit into a byte
+     * @param chars the symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @return true if all the symbols are latin-1
+     */
+    private static boolean isNarrow(char[] chars, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (chars[i] > 0xFF) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a column
+     * @param out destination
+     * @param table the table
+     * @param col index of the column
+     * @param column encoding of the column
+     * @throws IOException
+     */
+    private static void writeColumn(Output out, CSVTable table, int col, Column column) throws IOException {
+        int rows = table.getRowCount();
+        if (table.getType(col) != ColumnType.TEXT) {
+            long[] nulls = table.nullBits(col);
+            for (int i = 0, n = (int) ((rows + 63L) >> 6); i < n; i++) {
+                out.ensure(8);
+                // bits after the last row are not kept clear by the table
+                long mask = i == n - 1 && (rows & 63) != 0 ? (1L << rows) - 1 : -1L;
+                out.buf.putLong(nulls[i] & mask);
+            }
+            if (table.getType(col) == ColumnType.DOUBLE) {
+                double[] values = table.getDoubles(col);
+                for (int row = 0; row < rows; row++) {
+                    out.ensure(8);
+                    out.buf.putDouble(values[row]);
+                }
+            } else {
+                long[] values = table.getLongs(col);
+                for (int row = 0; row < rows; row++) {
+                    out.ensure(8);
+                    out.buf.putLong(values[row]);
+                }
+            }
+            return;
+        }
+
+        if (column.dictionary == null) {
+            char[] chars = table.textChars(col);
+            int[] ends = table.textEnds(col);
+            int charCount = rows == 0 ? 0 : ends[rows - 1];
+            out.ensure(5);
+            out.buf.put((byte) (PLAIN | (column.narrow ? NARROW : 0)));
+            out.buf.putInt(charCount);
+            for (int row = 0; row < rows; row++) {
+                out.ensure(4);
+                out.buf.putInt(ends[row]);
+            }
+            out.putChars(chars, 0, charCount, column.narrow);
+            return;
+        }
+
+        out.ensure(10);
+        out.buf.put((byte) (DICTIONARY | (column.narrow ? NARROW : 0)));
+        out.buf.put((byte) column.idWidth);
+        out.buf.putInt(column.dictionary.length);
+        out.buf.putInt(column.dictChars);
+        int end = 0;
+        for (CSVField field : column.dictionary) {
+            end += field.length();
+            out.ensure(4);
+            out.buf.putInt(end);
+        }
+        char[] chars = table.textChars(col);
+        for (CSVField field : column.dictionary) {
+            out.putChars(chars, field.start(), field.end(), column.narrow);
+        }
+        for (int row = 0; row < rows; row++) {
+            out.ensure(4);
+            int id = column.ids[row];
+            if (column.idWidth == 1) out.buf.put((byte) id);
+            else if (column.idWidth == 2) out.buf.putShort((short) id);
+            else out.buf.putInt(id);
+        }
+    }
+
+    /**
+     * Reads a text column and expands a dictionary into fields
+     * @param buf the column
+     * @param rows number of rows
+     * @param col index of the column
+     * @param chars destination of the symbols
+     * @param ends destination of the ends of the fields
+     * @throws IOException the column is not valid
+     */
+    private static void readText(ByteBuffer buf, int rows, int col,
+                                 char[][] chars, int[][] ends) throws IOException {
+        byte encoding = buf.get();
+        boolean narrow = (encoding & NARROW) != 0;
+        long width = narrow ? 1 : 2;
+        encoding &= ~NARROW;
+
+        if (encoding == PLAIN) {
+            int charCount = buf.getInt();
+            if (charCount < 0 || buf.remaining() != rows * 4L + charCount * width) throw corrupted("bad column " + col);
+            ends[col] = new int[rows];
+            buf.asIntBuffer().get(ends[col]);
+            buf.position(buf.position() + rows * 4);
+            chars[col] = new char[charCount];
+            getChars(buf, chars[col], narrow);
+            checkEnds(ends[col], rows, charCount, col);
+            return;
+        }
+        if (encoding != DICTIONARY) throw corrupted("bad encoding of column " + col);
+
+        int idWidth = buf.get();
+        int dictSize = buf.getInt();
+        int dictChars = buf.getInt();
+        if ((idWidth != 1 && idWidth != 2 && idWidth != 4) || dictSize < 0 || dictChars < 0
+                || buf.remaining() != dictSize * 4L + dictChars * width + (long) rows * idWidth) {
+            throw corrupted("bad column " + col);
+        }
+
+        int[] dictEnds = new int[dictSize];
+        buf.asIntBuffer().get(dictEnds);
+        buf.position(buf.position() + dictSize * 4);
+        char[] dict = new char[dictChars];
+        getChars(buf, dict, narrow);
+        checkEnds(dictEnds, dictSize, dictChars, col);
+
+        // expand the fields, so the column is the same as a parsed one
+        int[] rowIds = new int[rows];
+        long total = 0;
+        for (int row = 0; row < rows; row++) {
+            int id = idWidth == 1 ? buf.get() & 0xFF : idWidth == 2 ? buf.getShort() & 0xFFFF : buf.getInt();
+            if (id < 0 || id >= dictSize) throw corrupted("bad id in column " + col);
+            rowIds[row] = id;
+            total += dictEnds[id] - (id == 0 ? 0 : dictEnds[id - 1]);
+        }
+        if (total > Integer.MAX_VALUE - 8) throw corrupted("column " + col + " is too long");
+
+        chars[col] = new char[(int) total];
+        ends[col] = new int[rows];
+        int pos = 0;
+        for (int row = 0; row < rows; row++) {
+            int id = rowIds[row];
+            int start = id == 0 ? 0 : dictEnds[id - 1];
+            System.arraycopy(dict, start, chars[col], pos, dictEnds[id] - start);
+            pos += dictEnds[id] - start;
+            ends[col][row] = pos;
+        }
+    }
+
+    /**
+     * Reads symbols
+     * @param buf source, the position is moved after the symbols
+     * @param dst destination, it is filled completely
+     * @param narrow true if a symbol takes a byte
+     */
+    private static void getChars(ByteBuffer buf, char[] dst, boolean narrow) {
+        if (!narrow) {
+            buf.asCharBuffer().get(dst);
+            buf.position(buf.position() + dst.length * 2);
+            return;
+        }
+
+        byte[] bytes = new byte[Math.min(dst.length, 8192)];
+        for (int from = 0; from < dst.length; from += bytes.length) {
+            int n = Math.min(bytes.length, dst.length - from);
+            buf.get(bytes, 0, n);
+            for (int k = 0; k < n; k++) {
+                dst[from + k] = (char) (bytes[k] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Checks that ends of the fields grow and stay inside the symbols
+     * @param ends the ends
+     * @param count number of fields
+     * @param charCount number of symbols
+     * @param col index of the column
+     * @throws IOException the ends are not valid
+     */
+    private static void checkEnds(int[] ends, int count, int charCount, int col) throws IOException {
+        int prev = 0;
+        for (int i = 0; i < count; i++) {
+            if (ends[i] < prev) throw corrupted("bad fields of column " + col);
+            prev = ends[i];
+        }
+        if (prev != charCount) throw corrupted("bad fields of column " + col);
+    }
+
+    /**
+     * Reads a length and checks that the buffer has so many elements
+     * @param buf the buffer
+     * @param elemSize size of an element
+     * @return the length
+     * @throws IOException the length is not valid
+     */
+    private static int checkedLength(ByteBuffer buf, int elemSize) throws IOException {
+        if (buf.remaining() < 4) throw corrupted("bad header");
+        int len = buf.getInt();
+        if (len < 0 || (long) len * elemSize > buf.remaining()) throw corrupted("bad header");
+        return len;
+    }
+
+    /**
+     * Compares CRC32 of the file with the stored one
+     * @param channel the file
+     * @param size number of the checked bytes, the checksum follows them
+     * @throws IOException the checksum is wrong
+     */
+    private static void checkSum(FileChannel channel, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        for (long start = 0; start < size; start += WINDOW_SIZE) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start)));
+        }
+
+        ByteBuffer stored = ByteBuffer.allocate(4);
+        while (stored.hasRemaining()) {
+            if (channel.read(stored, size + stored.position()) < 0) throw corrupted("no checksum");
+        }
+        if (stored.getInt(0) != (int) crc.getValue()) throw corrupted("checksum mismatch");
+    }
+
+    /**
+     * Creates the exception for a damaged snapshot
+     * @param reason what is wrong
+     * @return the exception
+     */
+    private static IOException corrupted(String reason) {
+        return new IOException("Corrupted snapshot: " + reason);
+    }
+
+    /**
+     * Encoded column
+     */
+    private static class Column {
+        private long size;                      // number of bytes
+        private CSVField[] dictionary;          // distinct fields, null for plain columns
+        private int[] ids;                      // ids of the rows in the dictionary
+        private int dictChars;                  // number of symbols in the dictionary
+        private int idWidth;                    // bytes per id
+        private boolean narrow;                 // symbols are latin-1
+    }
+
+    /**
+     * Buffered output, which computes the checksum of the written bytes
+     */
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        public Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Makes room in the buffer
+         * @param bytes required number of bytes, at most the size of the buffer
+         * @throws IOException
+         */
+        void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+        }
+
+        /**
+         * Writes bytes
+         * @param bytes the bytes
+         * @throws IOException
+         */
+        void putBytes(byte[] bytes) throws IOException {
+            for (int from = 0; from < bytes.length; ) {
+                ensure(1);
+                int n = Math.min(bytes.length - from, buf.remaining());
+                buf.put(bytes, from, n);
+                from += n;
+            }
+        }
+
+        /**
+         * Writes symbols as latin-1 or UTF-16
+         * @param chars the symbols
+         * @param from index of the first symbol
+         * @param to index after the last symbol
+         * @param narrow true if a symbol takes a byte
+         * @throws IOException
+         */
+        void putChars(char[] chars, int from, int to, boolean narrow) throws IOException {
+            while (from < to) {
+                ensure(2);
+                if (narrow) {
+                    int n = Math.min(to - from, buf.remaining());
+                    for (int k = 0; k < n; k++) {
+                        buf.put((byte) chars[from + k]);
+                    }
+                    from += n;
+                } else {
+                    int n = Math.min(to - from, buf.remaining() / 2);
+                    buf.asCharBuffer().put(chars, from, n);
+                    buf.position(buf.position() + n * 2);
+                    from += n;
+                }
+            }
+        }
+
+        /**
+         * Writes the buffer to the file
+         * @throws IOException
+         */
+        void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining()) channel.write(buf);
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,940 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * parser.CSVTable keeps parsed fields column by column.
+ * A text column is a single char buffer with an array of field ends,
+ * a typed column is an array of longs or doubles with a bitmap of
+ * nulls (empty fields). Fields are read by (row; column) without
+ * creating objects, Strings are created only on request.
+ * Types of the columns are declared by parser.CSVSchema before
+ * parsing, or text columns are converted later. Columns of a table
+ * with a header are found by name through parser.ColumnRef
+ */
+public class CSVTable {
+    // maximal length of an array, some VMs keep header words in an array
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    // declared types of the columns, null if all the columns are text
+    private final CSVSchema schema;
+
+    // fields of the header line, null if there is no header
+    private ArrayList<String> header;
+
+    // header before the table was cleared, reused if the next header is the same
+    private ArrayList<String> clearedHeader;
+
+    // indices of the columns by name, built for the indexedHeader on demand
+    private HashMap<String, Integer> columnIndex;
+    private ArrayList<String> indexedHeader;
+
+    // number of rows and columns, columns are -1 until the first row
+    private int rows;
+    private int cols;
+
+    // types of the columns
+    private ColumnType[] types;
+
+    // symbols of the text columns
+    private char[][] chars;
+
+    // ends of the fields in the text columns, field r is chars[ends[r - 1]; ends[r])
+    private int[][] ends;
+
+    // values of the typed columns, dates are kept as days since 1970-01-01
+    private long[][] longs;
+    private double[][] doubles;
+
+    // bitmaps of nulls of the typed columns
+    private long[][] nulls;
+
+    // view of the table as lists, created on demand
+    private List<List<String>> lists;
+
+    // buffers for a field, which is appended to a column
+    private char[] scratch;
+    private byte[] bytes;
+
+    /**
+     * Creates an empty table of text columns
+     */
+    public CSVTable() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty table with declared columns
+     * @param schema types of the columns, null if all the columns are text
+     */
+    public CSVTable(CSVSchema schema) {
+        this.schema = schema;
+        cols = -1;
+        scratch = new char[64];
+        bytes = new byte[64];
+    }
+
+    /**
+     * Creates a table of loaded columns, the arrays are kept without copying
+     * @param schema types of the columns, null if all the columns are text
+     * @param header fields of the header line, null if there is no header
+     * @param rows number of rows
+     * @param types types of the columns
+     * @param chars symbols of the text columns
+     * @param ends ends of the fields in the text columns
+     * @param longs values of the LONG and DATE columns
+     * @param doubles values of the DOUBLE columns
+     * @param nulls bitmaps of nulls of the typed columns
+     */
+    CSVTable(CSVSchema schema, ArrayList<String> header, int rows, ColumnType[] types, char[][] chars,
+             int[][] ends, long[][] longs, double[][] doubles, long[][] nulls) {
+        this(schema);
+        this.header = header;
+        this.rows = rows;
+        this.types = types;
+        this.chars = chars;
+        this.ends = ends;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.nulls = nulls;
+        cols = types.length;
+    }
+
+    /**
+     * Returns number of rows, the header is not counted
+     * @return number of rows
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Returns number of columns
+     * @return number of columns, 0 if the table is empty
+     */
+    public int getColumnCount() {
+        return Math.max(cols, 0);
+    }
+
+    /**
+     * Returns the schema
+     * @return the schema, null if all the columns are text
+     */
+    public CSVSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Returns the header
+     * @return fields of the header line, null if the schema has no header
+     */
+    public List<String> getHeader() {
+        return header;
+    }
+
+    /**
+     * Finds a column by name in the header, the name is compared
+     * ignoring case if the schema says so
+     * @param name name of the column
+     * @return reference to the column
+     * @throws IllegalStateException the table has no header
+     * @throws IllegalArgumentException the header has no such column, or has it twice
+     */
+    public ColumnRef column(String name) {
+        if (header == null) throw new IllegalStateException("Table has no header");
+        if (indexedHeader != header) indexColumns();
+
+        Integer col = columnIndex.get(key(name));
+        if (col == null) throw new IllegalArgumentException("No column \"" + name + "\" in the header " + header);
+        if (col < 0) {
+            int first = -col - 1;
+            int second = first + 1;
+            while (!key(header.get(second)).equals(key(name))) second++;
+            throw new IllegalArgumentException("Column \"" + name + "\" is in the header twice: columns "
+                    + first + " and " + second);
+        }
+        return new ColumnRef(this, col, header.get(col));
+    }
+
+    /**
+     * Returns type of a column
+     * @param col index of the column
+     * @return type of the column
+     */
+    public ColumnType getType(int col) {
+        checkCol(col);
+        return types[col];
+    }
+
+    /**
+     * Checks if a field of a typed column is null
+     * @param row index of the row
+     * @param col index of the column
+     * @return true if the field was empty, always false for text columns
+     */
+    public boolean isNull(int row, int col) {
+        check(row, col);
+        return types[col] != ColumnType.TEXT && (nulls[col][row >> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Returns length of a field
+     * @param row index of the row
+     * @param col index of the column
+     * @return number of symbols
+     */
+    public int getLength(int row, int col) {
+        check(row, col);
+        if (types[col] != ColumnType.TEXT) return getString(row, col).length();
+        return ends[col][row] - start(row, col);
+    }
+
+    /**
+     * Returns a symbol of a text field
+     * @param row index of the row
+     * @param col index of the column
+     * @param k index of the symbol in the field
+     * @return the symbol
+     */
+    public char charAt(int row, int col, int k) {
+        checkText(row, col);
+        int start = start(row, col);
+        if (k < 0 || start + k >= ends[col][row]) {
+            throw new IndexOutOfBoundsException("Symbol " + k + " of " + (ends[col][row] - start));
+        }
+        return chars[col][start + k];
+    }
+
+    /**
+     * Copies symbols of a text field
+     * @param row index of the row
+     * @param col index of the column
+     * @param dst destination array
+     * @param dstOff index in the destination
+     * @return number of copied symbols
+     */
+    public int getChars(int row, int col, char[] dst, int dstOff) {
+        checkText(row, col);
+        int start = start(row, col);
+        int len = ends[col][row] - start;
+        System.arraycopy(chars[col], start, dst, dstOff, len);
+        return len;
+    }
+
+    /**
+     * Returns a field as a String
+     * @param row index of the row
+     * @param col index of the column
+     * @return the field, empty for nulls
+     */
+    public String getString(int row, int col) {
+        check(row, col);
+        switch (types[col]) {
+            case LONG:
+                return isNull(row, col) ? "" : Long.toString(longs[col][row]);
+            case DATE:
+                return isNull(row, col) ? "" : LocalDate.ofEpochDay(longs[col][row]).toString();
+            case DOUBLE:
+                return isNull(row, col) ? "" : Double.toString(doubles[col][row]);
+            default:
+                int start = start(row, col);
+                return new String(chars[col], start, ends[col][row] - start);
+        }
+    }
+
+    /**
+     * Returns a field without copying, text fields are views of the
+     * column buffer, typed fields are formatted. The buffer is reused
+     * by the rows parsed after clear(), so a view is valid until then
+     * @param row index of the row
+     * @param col index of the column
+     * @return symbols of the field
+     */
+    public CharSequence get(int row, int col) {
+        check(row, col);
+        if (types[col] != ColumnType.TEXT) return getString(row, col);
+        return new CSVField(chars[col], start(row, col), ends[col][row]);
+    }
+
+    /**
+     * Returns a view of a row
+     * @param row index of the row
+     * @return fields of the row
+     */
+    public List<CharSequence> getRow(int row) {
+        check(row, 0);
+        return new AbstractList<CharSequence>() {
+            @Override
+            public CharSequence get(int col) {
+                return CSVTable.this.get(row, col);
+            }
+
+            @Override
+            public int size() {
+                return cols;
+            }
+        };
+    }
+
+    /**
+     * Returns a view of the table as rows of Strings. The view follows
+     * the table, also after clear(), Strings are created only when
+     * fields are read
+     * @return two-dimensional list of strings
+     */
+    public List<List<String>> asLists() {
+        if (lists == null) {
+            lists = new AbstractList<List<String>>() {
+                @Override
+                public List<String> get(int row) {
+                    check(row, 0);
+                    return new AbstractList<String>() {
+                        @Override
+                        public String get(int col) {
+                            return getString(row, col);
+                        }
+
+                        @Override
+                        public int size() {
+                            return cols;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return rows;
+                }
+            };
+        }
+        return lists;
+    }
+
+    /**
+     * Returns a field as a long, text fields are decoded
+     * @param row index of the row
+     * @param col index of the column
+     * @return the value, days since 1970-01-01 for dates, 0 for nulls
+     * @throws NumberFormatException the field is not a long
+     */
+    public long getLong(int row, int col) {
+        check(row, col);
+        switch (types[col]) {
+            case LONG:
+            case DATE:
+                return longs[col][row];
+            case DOUBLE:
+                return (long) doubles[col][row];
+            default:
+                return Numbers.parseLong(chars[col], start(row, col), ends[col][row]);
+        }
+    }
+
+    /**
+     * Returns a field as a double, text fields are decoded
+     * @param row index of the row
+     * @param col index of the column
+     * @return the value, days since 1970-01-01 for dates, 0 for nulls
+     * @throws NumberFormatException the field is not a double
+     */
+    public double getDouble(int row, int col) {
+        check(row, col);
+        switch (types[col]) {
+            case LONG:
+            case DATE:
+                return longs[col][row];
+            case DOUBLE:
+                return doubles[col][row];
+            default:
+                return Numbers.parseDouble(chars[col], start(row, col), ends[col][row]);
+        }
+    }
+
+    /**
+     * Returns values of a LONG or DATE column, the array might be longer
+     * than the number of rows
+     * @param col index of the column
+     * @return the values
+     */
+    public long[] getLongs(int col) {
+        checkCol(col);
+        if (types[col] != ColumnType.LONG && types[col] != ColumnType.DATE) {
+            throw new IllegalStateException("Column " + col + " is " + types[col]);
+        }
+        return longs[col];
+    }
+
+    /**
+     * Returns values of a DOUBLE column, the array might be longer than
+     * the number of rows
+     * @param col index of the column
+     * @return the values
+     */
+    public double[] getDoubles(int col) {
+        checkCol(col);
+        if (types[col] != ColumnType.DOUBLE) {
+            throw new IllegalStateException("Column " + col + " is " + types[col]);
+        }
+        return doubles[col];
+    }
+
+    /**
+     * Returns symbols of a text column, the array might be longer than
+     * the symbols of the fields
+     * @param col index of the column
+     * @return the symbols
+     */
+    char[] textChars(int col) {
+        return chars[col];
+    }
+
+    /**
+     * Returns ends of the fields of a text column
+     * @param col index of the column
+     * @return the ends
+     */
+    int[] textEnds(int col) {
+        return ends[col];
+    }
+
+    /**
+     * Returns bitmap of nulls of a typed column
+     * @param col index of the column
+     * @return the bitmap, bit r is set if row r is null
+     */
+    long[] nullBits(int col) {
+        return nulls[col];
+    }
+
+    /**
+     * Converts a text column into a typed one, empty fields become nulls.
+     * The fields are decoded into new arrays, so the column stays text
+     * if a field can't be decoded
+     * @param col index of the column
+     * @param type new type of the column
+     * @throws NumberFormatException a field is not a number
+     */
+    public void convert(int col, ColumnType type) {
+        checkCol(col);
+        if (types[col] == type) return;
+        if (types[col] != ColumnType.TEXT || type == ColumnType.TEXT) {
+            throw new IllegalArgumentException("Only text columns can be converted");
+        }
+
+        char[] text = chars[col];
+        int[] textEnds = ends[col];
+        int capacity = Math.max(textEnds.length, 1);
+        long[] longValues = type == ColumnType.DOUBLE ? null : new long[capacity];
+        double[] doubleValues = type == ColumnType.DOUBLE ? new double[capacity] : null;
+        long[] nullBits = new long[(capacity + 63) >> 6];
+
+        for (int row = 0; row < rows; row++) {
+            int start = row == 0 ? 0 : textEnds[row - 1];
+            try {
+                decode(type, longValues, doubleValues, nullBits, row, text, start, textEnds[row]);
+            } catch (NumberFormatException e) {
+                throw new NumberFormatException(e.getMessage() + " in row " + (row + 1) + ", column " + (col + 1));
+            }
+        }
+
+        // all the fields are decoded, the text is replaced
+        types[col] = type;
+        chars[col] = null;
+        ends[col] = null;
+        longs[col] = longValues;
+        doubles[col] = doubleValues;
+        nulls[col] = nullBits;
+    }
+
+    /**
+     * Copies all fields into lists of Strings
+     * @return two-dimensional array of strings
+     */
+    public ArrayList<ArrayList<String>> toLists() {
+        ArrayList<ArrayList<String>> fields = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            ArrayList<String> line = new ArrayList<>(cols);
+            for (int col = 0; col < cols; col++) {
+                line.add(getString(row, col));
+            }
+            fields.add(line);
+        }
+        return fields;
+    }
+
+    /**
+     * Removes all the rows and the header. Storage of the columns is kept
+     * and reused by the next rows, if they have the same columns, so the
+     * fields returned by get() and getRow() show the next rows
+     */
+    public void clear() {
+        rows = 0;
+        cols = -1;
+        if (header != null) clearedHeader = header;
+        header = null;
+    }
+
+    /**
+     * Appends a parsed record
+     * @param record the record
+     * @throws CSVParseException a typed field can't be decoded, or the fields don't match the columns
+     */
+    void addRow(CSVRecord record) {
+        if (startRow(record.size(), record.getLine())) {
+            header = isClearedHeader(record) ? clearedHeader : record.toList();
+            return;
+        }
+
+        int col = 0;
+        try {
+            for (; col < cols; col++) {
+                appendField(col, record.get(col));
+            }
+        } catch (NumberFormatException e) {
+            throw new CSVParseException(e.getMessage(), record.getLine(), col + 1);
+        }
+        rows++;
+    }
+
+    /**
+     * Appends a record parsed from bytes, fields are decoded from UTF-8
+     * @param record the record
+     * @throws CSVParseException a typed field can't be decoded, or the fields don't match the columns
+     */
+    void addRow(MappedRecord record) {
+        if (startRow(record.size(), record.getLine())) {
+            header = record.toList();
+            return;
+        }
+
+        int col = 0;
+        try {
+            for (; col < cols; col++) {
+                int len = record.getLength(col);
+                if (bytes.length < len) bytes = new byte[Math.max(len, bytes.length * 2)];
+                record.copyTo(col, bytes, 0);
+
+                boolean ascii = true;
+                for (int k = 0; ascii && k < len; k++) {
+                    ascii = bytes[k] >= 0;
+                }
+                if (!ascii) {
+                    appendField(col, new String(bytes, 0, len, StandardCharsets.UTF_8));
+                    continue;
+                }
+
+                // ascii bytes are symbols themselves
+                char[] dst = reserve(len);
+                for (int k = 0; k < len; k++) {
+                    dst[k] = (char) bytes[k];
+                }
+                appendDecoded(col, len);
+            }
+        } catch (NumberFormatException e) {
+            throw new CSVParseException(e.getMessage(), record.getLine(), col + 1);
+        }
+        rows++;
+    }
+
+    /**
+     * Appends a record
+     * @param fields fields of the record
+     * @param line number of the line, where the record ends
+     * @throws CSVParseException a typed field can't be decoded, or the fields don't match the columns
+     */
+    void addRow(List<? extends CharSequence> fields, int line) {
+        if (startRow(fields.size(), line)) {
+            header = new ArrayList<>(fields.size());
+            for (CharSequence field : fields) {
+                header.add(field.toString());
+            }
+            return;
+        }
+
+        int col = 0;
+        try {
+            for (; col < cols; col++) {
+                appendField(col, fields.get(col));
+            }
+        } catch (NumberFormatException e) {
+            throw new CSVParseException(e.getMessage(), line, col + 1);
+        }
+        rows++;
+    }
+
+    /**
+     * Appends all rows of a table with the same columns
+     * @param other the table
+     */
+    void addAll(CSVTable other) {
+        if (other.cols < 0) return;
+        if (cols < 0) {
+            header = other.header;
+            init(other.cols, other.types);
+        } else if (other.cols != cols) {
+            throw new IllegalArgumentException("Table has " + other.cols + " columns instead of " + cols);
+        }
+
+        long total = (long) rows + other.rows;
+        for (int col = 0; col < cols; col++) {
+            ensureRows(col, total);
+            if (types[col] == ColumnType.TEXT) {
+                int base = rows == 0 ? 0 : ends[col][rows - 1];
+                int len = other.rows == 0 ? 0 : other.ends[col][other.rows - 1];
+                if ((long) base + len > chars[col].length) {
+                    chars[col] = Arrays.copyOf(chars[col], grownLength(col, chars[col].length, (long) base + len));
+                }
+                System.arraycopy(other.chars[col], 0, chars[col], base, len);
+                for (int row = 0; row < other.rows; row++) {
+                    ends[col][rows + row] = base + other.ends[col][row];
+                }
+                continue;
+            }
+
+            if (types[col] == ColumnType.DOUBLE) {
+                System.arraycopy(other.doubles[col], 0, doubles[col], rows, other.rows);
+            } else {
+                System.arraycopy(other.longs[col], 0, longs[col], rows, other.rows);
+            }
+            for (int row = 0; row < other.rows; row++) {
+                int to = rows + row;
+                if ((other.nulls[col][row >> 6] & (1L << row)) != 0) nulls[col][to >> 6] |= 1L << to;
+                else nulls[col][to >> 6] &= ~(1L << to);
+            }
+        }
+        rows = (int) total;                     // ensureRows checked it fits
+    }
+
+    /**
+     * Prepares columns for the next row
+     * @param size number of fields in the row
+     * @param line number of the line, where the row ends
+     * @return true if the row is the header
+     * @throws CSVParseException the row does not match the schema or the previous rows
+     */
+    private boolean startRow(int size, int line) {
+        if (cols < 0) {
+            if (schema != null && schema.size() >= 0 && schema.size() != size) {
+                throw new CSVParseException("Schema has " + schema.size() + " columns, but there are "
+                        + size + " fields", line);
+            }
+            if (isDeclared(size)) {
+                cols = size;                    // columns of the cleared rows are reused
+            } else {
+                ColumnType[] declared = new ColumnType[size];
+                for (int col = 0; col < size; col++) {
+                    declared[col] = schema != null ? schema.getType(col) : ColumnType.TEXT;
+                }
+                init(size, declared);
+            }
+            if (schema != null && schema.hasHeader()) return true;
+        } else if (size != cols) {
+            // rows appended by another parse are checked against the previous ones here
+            throw new CSVParseException("Row has " + size + " fields instead of " + cols, line);
+        }
+
+        for (int col = 0; col < cols; col++) {
+            ensureRows(col, rows + 1);
+            if (types[col] != ColumnType.TEXT) nulls[col][rows >> 6] &= ~(1L << rows);
+        }
+        return false;
+    }
+
+    /**
+     * Builds indices of the columns of the header, the repeated names
+     * are marked by -1 - index of their first column
+     */
+    private void indexColumns() {
+        HashMap<String, Integer> index = new HashMap<>(header.size() * 2);
+        for (int col = 0; col < header.size(); col++) {
+            String key = key(header.get(col));
+            Integer first = index.putIfAbsent(key, col);
+            if (first != null && first >= 0) index.put(key, -first - 1);
+        }
+        columnIndex = index;
+        indexedHeader = header;
+    }
+
+    /**
+     * Returns the key of a name in the indices of the columns
+     * @param name name of a column
+     * @return the name, in lower case if case is ignored
+     */
+    private String key(String name) {
+        return schema != null ? schema.key(name) : name;
+    }
+
+    /**
+     * Checks if a header record is the same as the header before clearing
+     * @param record the record
+     * @return true if the header can be reused
+     */
+    private boolean isClearedHeader(CSVRecord record) {
+        if (clearedHeader == null || clearedHeader.size() != record.size()) return false;
+        for (int col = 0; col < record.size(); col++) {
+            if (!clearedHeader.get(col).contentEquals(record.get(col))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the kept columns have the declared types
+     * @param size number of columns
+     * @return true if the columns can be reused
+     */
+    private boolean isDeclared(int size) {
+        if (types == null || types.length != size) return false;
+        for (int col = 0; col < size; col++) {
+            if (types[col] != (schema != null ? schema.getType(col) : ColumnType.TEXT)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates empty columns
+     * @param size number of columns
+     * @param columnTypes types of the columns
+     */
+    private void init(int size, ColumnType[] columnTypes) {
+        cols = size;
+        types = new ColumnType[cols];
+        chars = new char[cols][];
+        ends = new int[cols][];
+        longs = new long[cols][];
+        doubles = new double[cols][];
+        nulls = new long[cols][];
+        for (int col = 0; col < cols; col++) {
+            initColumn(col, columnTypes[col], 16);
+        }
+    }
+
+    /**
+     * Creates empty storage of a column
+     * @param col index of the column
+     * @param type type of the column
+     * @param capacity number of rows
+     */
+    private void initColumn(int col, ColumnType type, int capacity) {
+        types[col] = type;
+        chars[col] = null;
+        ends[col] = null;
+        longs[col] = null;
+        doubles[col] = null;
+        nulls[col] = null;
+
+        switch (type) {
+            case LONG:
+            case DATE:
+                longs[col] = new long[capacity];
+                nulls[col] = new long[(capacity + 63) >> 6];
+                break;
+            case DOUBLE:
+                doubles[col] = new double[capacity];
+                nulls[col] = new long[(capacity + 63) >> 6];
+                break;
+            default:
+                chars[col] = new char[capacity * 4];
+                ends[col] = new int[capacity];
+        }
+    }
+
+    /**
+     * Appends a field to a column
+     * @param col index of the column
+     * @param field the field
+     */
+    private void appendField(int col, CharSequence field) {
+        int len = field.length();
+        char[] dst = reserve(len);
+        if (field instanceof StringBuilder) {
+            ((StringBuilder) field).getChars(0, len, dst, 0);
+        } else if (field instanceof String) {
+            ((String) field).getChars(0, len, dst, 0);
+        } else {
+            for (int k = 0; k < len; k++) {
+                dst[k] = field.charAt(k);
+            }
+        }
+        appendDecoded(col, len);
+    }
+
+    /**
+     * Returns scratch buffer of the required size
+     * @param len number of symbols
+     * @return the buffer
+     */
+    private char[] reserve(int len) {
+        if (scratch.length < len) scratch = new char[Math.max(len, scratch.length * 2)];
+        return scratch;
+    }
+
+    /**
+     * Appends the field from the scratch buffer to a column
+     * @param col index of the column
+     * @param len number of symbols
+     */
+    private void appendDecoded(int col, int len) {
+        if (types[col] != ColumnType.TEXT) {
+            decode(col, rows, scratch, 0, len);
+            return;
+        }
+
+        int start = rows == 0 ? 0 : ends[col][rows - 1];
+        if ((long) start + len > chars[col].length) {
+            chars[col] = Arrays.copyOf(chars[col], grownLength(col, chars[col].length, (long) start + len));
+        }
+        System.arraycopy(scratch, 0, chars[col], start, len);
+        ends[col][rows] = start + len;
+    }
+
+    /**
+     * Decodes a field into a typed column, empty field is null
+     * @param col index of the column
+     * @param row index of the row
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     */
+    private void decode(int col, int row, char[] s, int from, int to) {
+        decode(types[col], longs[col], doubles[col], nulls[col], row, s, from, to);
+    }
+
+    /**
+     * Decodes a field into arrays of a typed column, empty field is null
+     * @param type type of the column
+     * @param longValues values of a LONG or DATE column
+     * @param doubleValues values of a DOUBLE column
+     * @param nullBits bitmap of nulls
+     * @param row index of the row
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     */
+    private static void decode(ColumnType type, long[] longValues, double[] doubleValues, long[] nullBits,
+                               int row, char[] s, int from, int to) {
+        if (from == to) {
+            nullBits[row >> 6] |= 1L << row;
+            return;
+        }
+
+        switch (type) {
+            case LONG:
+                longValues[row] = Numbers.parseLong(s, from, to);
+                break;
+            case DATE:
+                longValues[row] = Numbers.parseDate(s, from, to);
+                break;
+            default:
+                doubleValues[row] = Numbers.parseDouble(s, from, to);
+        }
+    }
+
+    /**
+     * Makes room for rows in a column
+     * @param col index of the column
+     * @param capacity required number of rows
+     * @throws IllegalStateException the column can't have so many rows
+     */
+    private void ensureRows(int col, long capacity) {
+        if (capacity <= rowCapacity(col)) return;
+
+        int size = grownLength(col, rows, capacity);
+        switch (types[col]) {
+            case LONG:
+            case DATE:
+                if (capacity > longs[col].length) longs[col] = Arrays.copyOf(longs[col], size);
+                break;
+            case DOUBLE:
+                if (capacity > doubles[col].length) doubles[col] = Arrays.copyOf(doubles[col], size);
+                break;
+            default:
+                if (capacity > ends[col].length) ends[col] = Arrays.copyOf(ends[col], size);
+        }
+        if (types[col] != ColumnType.TEXT && capacity > (long) nulls[col].length << 6) {
+            nulls[col] = Arrays.copyOf(nulls[col], (int) ((size + 63L) >> 6));
+        }
+    }
+
+    /**
+     * Returns number of rows, which a column has room for
+     * @param col index of the column
+     * @return number of rows
+     */
+    private long rowCapacity(int col) {
+        switch (types[col]) {
+            case LONG:
+            case DATE:
+                return Math.min(longs[col].length, (long) nulls[col].length << 6);
+            case DOUBLE:
+                return Math.min(doubles[col].length, (long) nulls[col].length << 6);
+            default:
+                return ends[col].length;
+        }
+    }
+
+    /**
+     * Computes the length of a grown array of a column, it is doubled
+     * while it stays below the maximal length of an array
+     * @param col index of the column
+     * @param length current length
+     * @param required required length
+     * @return the new length
+     * @throws IllegalStateException the required length is above the maximal length of an array
+     */
+    private static int grownLength(int col, int length, long required) {
+        if (required > MAX_ARRAY_SIZE) {
+            throw new IllegalStateException("Column " + col + " is too large: it needs " + required
+                    + " elements, but an array holds at most " + MAX_ARRAY_SIZE);
+        }
+        return (int) Math.max(required, Math.min(length * 2L, MAX_ARRAY_SIZE));
+    }
+
+    /**
+     * Returns start of a text field
+     * @param row index of the row
+     * @param col index of the column
+     * @return index of the first symbol
+     */
+    private int start(int row, int col) {
+        return row == 0 ? 0 : ends[col][row - 1];
+    }
+
+    /**
+     * Checks indices of a field
+     * @param row index of the row
+     * @param col index of the column
+     */
+    private void check(int row, int col) {
+        checkCol(col);
+        if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+    }
+
+    /**
+     * Checks index of a column
+     * @param col index of the column
+     */
+    private void checkCol(int col) {
+        if (col < 0 || col >= cols) throw new IndexOutOfBoundsException("Column " + col + " of " + getColumnCount());
+    }
+
+    /**
+     * Checks indices of a text field
+     * @param row index of the row
+     * @param col index of the column
+     */
+    private void checkText(int row, int col) {
+        check(row, col);
+        if (types[col] != ColumnType.TEXT) throw new IllegalStateException("Column " + col + " is " + types[col]);
+    }
+}
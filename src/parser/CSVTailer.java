@@ -0,0 +1,292 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The parser.CSVTailer class parses a growing file incrementally.
+ * It keeps the offset of the read bytes and the automate with its
+ * state, so an unfinished record, even inside a quoted field, is
+ * continued by the next bytes. Each refresh reads only the bytes
+ * appended since the previous one. A record is passed to the listener
+ * once its line separator is read; an unterminated last line waits for
+ * more bytes. The file is considered rotated if it becomes shorter, if
+ * the last read bytes are not in the file any more, e.g. after a copy
+ * and truncate, which grows past the old offset before the next refresh,
+ * or if the path names another file, e.g. after the file is renamed and
+ * a new one is created. The rest of a renamed file is read first, then
+ * the path is opened again and parsed from the beginning by a new
+ * automate. A rewritten file, which has the same last read bytes at the
+ * same offset, is taken for the old one
+ */
+public class CSVTailer implements Closeable {
+    // default size of the read buffer
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // number of the last read bytes, which are compared to find a rewritten file
+    private static final int TAIL_SIZE = 64;
+
+    // the file
+    private final Path path;
+
+    // receiver of the new records
+    private final MappedRecordHandler listener;
+
+    // called when the file is rotated, before its first record, null if not needed
+    private final Runnable restart;
+
+    // dialect of the file
+    private final CSVDialect dialect;
+
+    // buffer for the new bytes, reused between reads
+    private final ByteBuffer buf;
+
+    // the file
+    private FileChannel channel;
+
+    // identity of the opened file, null if the file system has none
+    private Object fileKey;
+
+    // automate with the state after the read bytes
+    private ByteAutomate automate;
+
+    // offset of the first byte, which is not read yet
+    private long offset;
+
+    // the last read bytes, before the offset
+    private final byte[] tail = new byte[TAIL_SIZE];
+    private int tailLen;
+
+    // bytes of the file at the place of the tail, read by a refresh
+    private final ByteBuffer tailCheck = ByteBuffer.allocate(TAIL_SIZE);
+
+    // number of records passed to the listener by the current refresh
+    private int records;
+
+    // watcher of the directory, created by follow()
+    private WatchService watcher;
+
+    /**
+     * Opens the file with default buffer size, nothing is read until a refresh
+     * @param path the file
+     * @param listener receiver of the new records, views are valid only during the call
+     * @throws IOException
+     */
+    public CSVTailer(Path path, MappedRecordHandler listener) throws IOException {
+        this(path, listener, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Opens the file, nothing is read until a refresh
+     * @param path the file
+     * @param listener receiver of the new records, views are valid only during the call
+     * @param bufferSize number of bytes read at once
+     * @throws IOException
+     */
+    public CSVTailer(Path path, MappedRecordHandler listener, int bufferSize) throws IOException {
+        this(path, listener, bufferSize, CSVDialect.DEFAULT);
+    }
+
+    /**
+     * Opens the file of a dialect, nothing is read until a refresh
+     * @param path the file
+     * @param listener receiver of the new records, views are valid only during the call
+     * @param bufferSize number of bytes read at once
+     * @param dialect dialect of the file
+     * @throws IOException
+     */
+    public CSVTailer(Path path, MappedRecordHandler listener, int bufferSize, CSVDialect dialect) throws IOException {
+        this(path, listener, bufferSize, dialect, null);
+    }
+
+    /**
+     * Opens the file of a dialect, nothing is read until a refresh
+     * @param path the file
+     * @param listener receiver of the new records, views are valid only during the call
+     * @param bufferSize number of bytes read at once
+     * @param dialect dialect of the file
+     * @param restart called when the file is rotated, before the records of the new file, null if not needed
+     * @throws IOException
+     */
+    public CSVTailer(Path path, MappedRecordHandler listener, int bufferSize, CSVDialect dialect,
+                     Runnable restart) throws IOException {
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be positive");
+
+        this.path = path;
+        this.listener = listener;
+        this.dialect = dialect;
+        this.restart = restart;
+        buf = ByteBuffer.allocate(bufferSize);
+        open();
+    }
+
+    /**
+     * Parses the bytes appended since the previous refresh
+     * @return number of the new records
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing, the tailer can't continue
+     */
+    public synchronized int poll() throws IOException {
+        records = 0;
+        if (channel.size() < offset || isRewritten()) {
+            reset();                                // the file is truncated
+        } else if (isReplaced()) {
+            // the bytes appended before the rename belong to the old file
+            read();
+            if (offset > 0) automate.finish();
+            reset();
+        }
+
+        read();
+        automate.flushLine();
+        return records;
+    }
+
+    /**
+     * Refreshes the file, whenever it is modified, until the tailer is
+     * closed or the thread is interrupted. The parent directory is
+     * watched by a WatchService
+     * @throws IOException
+     * @throws InterruptedException the thread is interrupted
+     * @throws CSVParseException error occurred during parsing
+     */
+    public void follow() throws IOException, InterruptedException {
+        Path dir = path.toAbsolutePath().getParent();
+        Path name = path.getFileName();
+        synchronized (this) {
+            if (watcher == null) watcher = dir.getFileSystem().newWatchService();
+        }
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+
+        poll();
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+                }
+                key.reset();
+                if (changed) poll();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // the tailer is closed
+        }
+    }
+
+    /**
+     * Returns offset of the first byte, which is not parsed yet
+     * @return the offset
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (watcher != null) watcher.close();
+            channel.close();
+        }
+    }
+
+    /**
+     * Parses the bytes of the opened file, which are not read yet
+     * @throws IOException
+     */
+    private void read() throws IOException {
+        int n;
+        while ((n = channel.read(buf.clear(), offset)) > 0) {
+            automate.feed(buf, offset, 0, n);
+            automate.release();
+            offset += n;
+
+            // the tail keeps the last bytes of the previous reads and of this one
+            int keep = Math.min(n, TAIL_SIZE);
+            int kept = Math.min(tailLen, TAIL_SIZE - keep);
+            System.arraycopy(tail, tailLen - kept, tail, 0, kept);
+            buf.get(n - keep, tail, kept, keep);
+            tailLen = kept + keep;
+        }
+    }
+
+    /**
+     * Checks if the last read bytes are replaced in the opened file,
+     * e.g. it was truncated and written again past the offset
+     * @return true if the file is rewritten
+     * @throws IOException
+     */
+    private boolean isRewritten() throws IOException {
+        if (tailLen == 0) return false;
+
+        long start = offset - tailLen;
+        tailCheck.clear().limit(tailLen);
+        while (tailCheck.hasRemaining()) {
+            if (channel.read(tailCheck, start + tailCheck.position()) < 0) return true;
+        }
+        for (int i = 0; i < tailLen; i++) {
+            if (tailCheck.get(i) != tail[i]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the path names another file than the opened one
+     * @return true if the file is replaced
+     * @throws IOException
+     */
+    private boolean isReplaced() throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;                           // the new file is not created yet, the old one is read on
+        }
+
+        // without file keys only a shorter file is noticed
+        Object key = attrs.fileKey();
+        return key != null ? !key.equals(fileKey) : attrs.size() < offset;
+    }
+
+    /**
+     * Opens the path and starts parsing from the beginning of the file
+     * @throws IOException
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        offset = 0;
+        tailLen = 0;
+        automate = new ByteAutomate(dialect.table(), record -> {
+            records++;
+            listener.handle(record);
+        });
+    }
+
+    /**
+     * Opens the rotated file again
+     * @throws IOException
+     */
+    private void reset() throws IOException {
+        channel.close();
+        open();
+        if (restart != null) restart.run();
+    }
+}
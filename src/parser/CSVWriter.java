@@ -0,0 +1,456 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The parser.CSVWriter class writes records into a csv stream, so they
+ * are parsed back to the same fields. A field is quoted only if the
+ * automaton would not read it back unquoted: it contains a delimiter, a
+ * quote or a line separator, starts or ends with a space or a tab, has
+ * spaces, which the automaton skips, or it is the only empty field of a
+ * line (an empty line is skipped).
+ * Quotes are doubled inside a quoted field. The automaton reads \r and
+ * empty lines inside a quoted field as line separators, so such fields
+ * are read back with \n; parsed fields never contain them and are
+ * always written back unchanged.
+ * In a dialect with an escape, the escape is doubled inside a quoted
+ * field; a dialect without a quote escapes every special symbol instead.
+ * Symbols are collected in a single reused buffer, encoded and written
+ * to a channel in large blocks. Lines end with \n
+ */
+public class CSVWriter implements Closeable, Flushable {
+    // default number of symbols collected before encoding
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    // automaton, which reads the output back
+    private final TransitionTable table;
+
+    // special symbols of the dialect
+    private final char delimiter;
+    private final char quote;
+    private final char escape;
+
+    // destination of bytes
+    private final WritableByteChannel channel;
+
+    // encoder of the charset
+    private final CharsetEncoder encoder;
+
+    // collected symbols
+    private final CharBuffer chars;
+
+    // encoded bytes, a heap buffer keeps the encoder on its array loop
+    private final ByteBuffer bytes;
+
+    // buffer for copying symbols of a field
+    private char[] scratch;
+
+    // number of fields in the first record, -1 if there were no records yet
+    private int lineSize;
+
+    /**
+     * Creates a writer in the default charset
+     * @param channel destination of bytes
+     */
+    public CSVWriter(WritableByteChannel channel) {
+        this(channel, Charset.defaultCharset());
+    }
+
+    /**
+     * Creates a writer
+     * @param channel destination of bytes
+     * @param charset charset of the output
+     */
+    public CSVWriter(WritableByteChannel channel, Charset charset) {
+        this(channel, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a writer
+     * @param channel destination of bytes
+     * @param charset charset of the output
+     * @param bufferSize number of symbols collected before encoding
+     */
+    public CSVWriter(WritableByteChannel channel, Charset charset, int bufferSize) {
+        this(channel, charset, bufferSize, CSVDialect.DEFAULT);
+    }
+
+    /**
+     * Creates a writer of a dialect
+     * @param channel destination of bytes
+     * @param charset charset of the output
+     * @param bufferSize number of symbols collected before encoding
+     * @param dialect dialect of the output
+     */
+    public CSVWriter(WritableByteChannel channel, Charset charset, int bufferSize, CSVDialect dialect) {
+        if (bufferSize < 16) throw new IllegalArgumentException("Buffer size must be at least 16");
+
+        this.channel = channel;
+        table = dialect.table();
+        delimiter = dialect.getDelimiter();
+        quote = dialect.getQuote();
+        escape = dialect.getEscape();
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        chars = CharBuffer.allocate(bufferSize);
+        bytes = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE,
+                (long) Math.ceil(bufferSize * (double) encoder.maxBytesPerChar())));
+        scratch = new char[64];
+        lineSize = -1;
+    }
+
+    /**
+     * Opens a writer of the file in the default charset, the file is truncated
+     * @param path the file
+     * @return the writer
+     * @throws IOException
+     */
+    public static CSVWriter open(Path path) throws IOException {
+        return open(path, Charset.defaultCharset());
+    }
+
+    /**
+     * Opens a writer of the file, the file is truncated
+     * @param path the file
+     * @param charset charset of the file
+     * @return the writer
+     * @throws IOException
+     */
+    public static CSVWriter open(Path path, Charset charset) throws IOException {
+        return open(path, charset, CSVDialect.DEFAULT);
+    }
+
+    /**
+     * Opens a writer of the file in a dialect, the file is truncated
+     * @param path the file
+     * @param charset charset of the file
+     * @param dialect dialect of the file
+     * @return the writer
+     * @throws IOException
+     */
+    public static CSVWriter open(Path path, Charset charset, CSVDialect dialect) throws IOException {
+        return new CSVWriter(FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), charset, DEFAULT_BUFFER_SIZE, dialect);
+    }
+
+    /**
+     * Writes a record
+     * @param fields fields of the record
+     * @throws IOException
+     */
+    public void write(List<? extends CharSequence> fields) throws IOException {
+        startLine(fields.size());
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) put(delimiter);
+            CharSequence field = fields.get(i);
+            int len = field.length();
+            char[] s = reserve(len);
+            copy(field, s, len);
+            putField(s, 0, len, fields.size() == 1);
+        }
+        put('\n');
+    }
+
+    /**
+     * Writes a parsed record
+     * @param record the record
+     * @throws IOException
+     */
+    public void write(CSVRecord record) throws IOException {
+        startLine(record.size());
+        for (int i = 0; i < record.size(); i++) {
+            if (i > 0) put(delimiter);
+            CharSequence field = record.get(i);
+            int len = field.length();
+            char[] s = reserve(len);
+            copy(field, s, len);
+            putField(s, 0, len, record.size() == 1);
+        }
+        put('\n');
+    }
+
+    /**
+     * Writes the header and all the rows of a table, text fields are
+     * written directly from the column buffers
+     * @param table the table
+     * @throws IOException
+     */
+    public void write(CSVTable table) throws IOException {
+        if (table.getHeader() != null) write(table.getHeader());
+
+        int cols = table.getColumnCount();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            startLine(cols);
+            for (int col = 0; col < cols; col++) {
+                if (col > 0) put(delimiter);
+                if (table.getType(col) == ColumnType.TEXT) {
+                    int len = table.getLength(row, col);
+                    table.getChars(row, col, reserve(len), 0);
+                    putField(scratch, 0, len, cols == 1);
+                } else {
+                    String field = table.getString(row, col);
+                    char[] s = reserve(field.length());
+                    field.getChars(0, field.length(), s, 0);
+                    putField(s, 0, field.length(), cols == 1);
+                }
+            }
+            put('\n');
+        }
+    }
+
+    /**
+     * Writes all the records
+     * @param records the records
+     * @throws IOException
+     */
+    public void writeAll(Iterator<? extends List<? extends CharSequence>> records) throws IOException {
+        while (records.hasNext()) {
+            write(records.next());
+        }
+    }
+
+    /**
+     * Writes all the records
+     * @param records the records
+     * @throws IOException
+     */
+    public void writeAll(Iterable<? extends List<? extends CharSequence>> records) throws IOException {
+        writeAll(records.iterator());
+    }
+
+    /**
+     * Encodes the collected symbols and writes them to the channel
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+    }
+
+    /**
+     * Writes the rest of the symbols and closes the channel
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            encode(true);
+            bytes.clear();
+            encoder.flush(bytes);
+            writeBytes();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Checks the number of fields of the next record, the automaton
+     * accepts only lines with equal number of fields
+     * @param size number of fields
+     */
+    private void startLine(int size) {
+        if (size == 0) throw new IllegalArgumentException("Record has no fields");
+        if (lineSize < 0) {
+            lineSize = size;
+        } else if (size != lineSize) {
+            throw new IllegalArgumentException("Record has " + size + " fields instead of " + lineSize);
+        }
+    }
+
+    /**
+     * Writes a field, quoted if it is needed
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @param only true if it is the only field of the line
+     * @throws IOException
+     * @throws IllegalArgumentException the field can't be written in the dialect
+     */
+    private void putField(char[] s, int from, int to, boolean only) throws IOException {
+        if (!needsQuotes(s, from, to, only)) {
+            put(s, from, to);
+            return;
+        }
+        if (quote == CSVDialect.NONE) {
+            putEscaped(s, from, to);
+            return;
+        }
+
+        put(quote);
+        int start = from;
+        for (int i = from; i < to; i++) {
+            if (s[i] == quote || (s[i] == escape && escape != CSVDialect.NONE)) {
+                put(s, start, i + 1);               // the quote or escape is written twice
+                start = i;
+            }
+        }
+        put(s, start, to);
+        put(quote);
+    }
+
+    /**
+     * Writes a field of a dialect without a quote, each special symbol is escaped
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @throws IOException
+     * @throws IllegalArgumentException the field can't be written in the dialect
+     */
+    private void putEscaped(char[] s, int from, int to) throws IOException {
+        if (escape == CSVDialect.NONE) {
+            throw new IllegalArgumentException("Field has special symbols, but the dialect has no quote and no escape");
+        }
+        if (from == to) throw new IllegalArgumentException("Empty line can't be written without a quote");
+        if (s[to - 1] == '\n' || s[to - 1] == '\r') {
+            // an escaped separator at the end of a line would join it with the next one
+            throw new IllegalArgumentException("Field ending with a line separator can't be written without a quote");
+        }
+
+        int start = from;
+        for (int i = from; i < to; i++) {
+            if (table.symbolClass(s[i]) != TransitionTable.SYMB_OTHER || s[i] == '\r') {
+                put(s, start, i);
+                put(escape);
+                start = i;
+            }
+        }
+        put(s, start, to);
+    }
+
+    /**
+     * Checks if a field must be quoted to be read back. A field without
+     * special symbols is read as it is, otherwise the automaton is run
+     * over the field to check that every symbol is appended
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @param only true if it is the only field of the line
+     * @return true if the field must be quoted
+     */
+    private boolean needsQuotes(char[] s, int from, int to, boolean only) {
+        if (from == to) return only;
+
+        int i = from;
+        while (i < to && table.symbolClass(s[i]) == TransitionTable.SYMB_OTHER && s[i] != '\r') i++;
+        if (i == to) return false;
+
+        int state = TransitionTable.INITIAL_STATE;
+        int trail = 0;                              // spaces, which are not appended yet
+        for (i = from; i < to; i++) {
+            if (s[i] == '\r') return true;
+            int symbClass = table.symbolClass(s[i]);
+            int action = table.action(state, symbClass);
+            state = table.nextState(state, symbClass);
+
+            if (action == TransitionTable.ACT_ADD_TRAIL) {
+                trail++;
+            } else if (action == TransitionTable.ACT_APPEND_SYMB || action == TransitionTable.ACT_APPEND_TRAIL) {
+                trail = 0;
+            } else {
+                return true;                        // the symbol is skipped or ends the field
+            }
+        }
+        return trail > 0;
+    }
+
+    /**
+     * Appends a symbol
+     * @param c the symbol
+     * @throws IOException
+     */
+    private void put(char c) throws IOException {
+        if (!chars.hasRemaining()) encode(false);
+        chars.put(c);
+    }
+
+    /**
+     * Appends symbols
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @throws IOException
+     */
+    private void put(char[] s, int from, int to) throws IOException {
+        while (from < to) {
+            if (!chars.hasRemaining()) encode(false);
+            int n = Math.min(to - from, chars.remaining());
+            chars.put(s, from, n);
+            from += n;
+        }
+    }
+
+    /**
+     * Encodes the collected symbols and writes the bytes
+     * @param end true if there are no more symbols
+     * @throws IOException
+     */
+    private void encode(boolean end) throws IOException {
+        chars.flip();
+        while (true) {
+            bytes.clear();
+            CoderResult result = encoder.encode(chars, bytes, end);
+            writeBytes();
+            if (result.isUnderflow()) break;
+        }
+        chars.compact();                            // a half of a surrogate pair might remain
+    }
+
+    /**
+     * Writes the encoded bytes to the channel
+     * @throws IOException
+     */
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Returns the scratch buffer of the required size
+     * @param len number of symbols
+     * @return the buffer
+     */
+    private char[] reserve(int len) {
+        if (scratch.length < len) scratch = new char[Math.max(len, scratch.length * 2)];
+        return scratch;
+    }
+
+    /**
+     * Copies symbols of a sequence
+     * @param field the sequence
+     * @param dst destination
+     * @param len number of symbols
+     */
+    private static void copy(CharSequence field, char[] dst, int len) {
+        if (field instanceof String) {
+            ((String) field).getChars(0, len, dst, 0);
+        } else if (field instanceof StringBuilder) {
+            ((StringBuilder) field).getChars(0, len, dst, 0);
+        } else {
+            for (int k = 0; k < len; k++) {
+                dst[k] = field.charAt(k);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+/**
+ * parser.ColumnRef is a column of parser.CSVTable, which is found by
+ * its name once. Fields are read by the index of the column, so a loop
+ * over the rows does not look up the name again
+ */
+public final class ColumnRef {
+    private final CSVTable table;           // table of the column
+    private final int col;                  // index of the column
+    private final String name;              // name of the column in the header
+
+    /**
+     * Creates a reference to a column
+     * @param table table of the column
+     * @param col index of the column
+     * @param name name of the column in the header
+     */
+    ColumnRef(CSVTable table, int col, String name) {
+        this.table = table;
+        this.col = col;
+        this.name = name;
+    }
+
+    public int getIndex() {
+        return col;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ColumnType getType() {
+        return table.getType(col);
+    }
+
+    /**
+     * Checks if a field is null
+     * @param row index of the row
+     * @return true if the field was empty, always false for text columns
+     */
+    public boolean isNull(int row) {
+        return table.isNull(row, col);
+    }
+
+    /**
+     * Returns a field without copying
+     * @param row index of the row
+     * @return symbols of the field
+     */
+    public CharSequence get(int row) {
+        return table.get(row, col);
+    }
+
+    /**
+     * Returns a field as a String
+     * @param row index of the row
+     * @return the field, empty for nulls
+     */
+    public String getString(int row) {
+        return table.getString(row, col);
+    }
+
+    /**
+     * Returns a field as a long, text fields are decoded
+     * @param row index of the row
+     * @return the value, days since 1970-01-01 for dates, 0 for nulls
+     * @throws NumberFormatException the field is not a long
+     */
+    public long getLong(int row) {
+        return table.getLong(row, col);
+    }
+
+    /**
+     * Returns a field as a double, text fields are decoded
+     * @param row index of the row
+     * @return the value, days since 1970-01-01 for dates, 0 for nulls
+     * @throws NumberFormatException the field is not a double
+     */
+    public double getDouble(int row) {
+        return table.getDouble(row, col);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (column " + col + ")";
+    }
+}
@@ -0,0 +1,17 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+
+/**
+ * parser.ColumnType defines how a column of parser.CSVTable is stored
+ */
+public enum ColumnType {
+    TEXT,                               // symbols of the fields
+    LONG,                               // long values, empty fields are nulls
+    DOUBLE,                             // double values, empty fields are nulls
+    DATE                                // ISO dates as days since 1970-01-01, empty fields are nulls
+}
@@ -0,0 +1,144 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The parser.MappedCSVReader class parses a local file, mapped into
+ * memory with FileChannel.map. The automate runs directly over the
+ * mapped bytes: there is no line reading, no String per line and no
+ * charset decoding. Files larger than a window (2 GB at most) are
+ * mapped window by window
+ */
+public class MappedCSVReader implements Closeable {
+    // default size of the mapped window
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    // the file
+    private final FileChannel channel;
+
+    // size of the mapped window
+    private final int windowSize;
+
+    // dialect of the file
+    private final CSVDialect dialect;
+
+    // receiver of the rejected rows, null if an error stops parsing
+    private Rejects rejects;
+
+    /**
+     * Opens the file with default window size
+     * @param path the file
+     * @throws IOException
+     */
+    public MappedCSVReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Opens the file
+     * @param path the file
+     * @param windowSize number of bytes mapped at once
+     * @throws IOException
+     */
+    public MappedCSVReader(Path path, int windowSize) throws IOException {
+        this(path, windowSize, CSVDialect.DEFAULT);
+    }
+
+    /**
+     * Opens the file of a dialect
+     * @param path the file
+     * @param windowSize number of bytes mapped at once
+     * @param dialect dialect of the file
+     * @throws IOException
+     */
+    public MappedCSVReader(Path path, int windowSize, CSVDialect dialect) throws IOException {
+        if (windowSize <= 0) throw new IllegalArgumentException("Window size must be positive");
+
+        this.windowSize = windowSize;
+        this.dialect = dialect;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    /**
+     * Makes parsing lenient: a row with a bad symbol or a wrong number
+     * of fields is passed to the handler and parsing goes on from the
+     * next line. The error, which exceeds the limit, stops parsing
+     * @param handler receiver of the rejected rows, null to stop on the first error
+     * @param maxErrors maximal number of rejected rows
+     */
+    public void setLenient(RejectHandler handler, int maxErrors) {
+        setLenient(handler == null ? null : new Rejects(handler, maxErrors));
+    }
+
+    /**
+     * Sets the counter of rejected rows
+     * @param rejects the counter, null to stop on the first error
+     */
+    void setLenient(Rejects rejects) {
+        this.rejects = rejects;
+    }
+
+    /**
+     * Parses the file and passes each record to the handler
+     * @param handler receiver of the records
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    public void read(MappedRecordHandler handler) throws IOException {
+        read(handler, null);
+    }
+
+    /**
+     * Parses the file and passes each record to the handler
+     * @param handler receiver of the records
+     * @param metrics receiver of the counters, null if they are not needed
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    void read(MappedRecordHandler handler, ParseMetrics metrics) throws IOException {
+        ByteAutomate automate = new ByteAutomate(dialect.table(), handler);
+        automate.setLenient(rejects);
+        try {
+            feed(channel, 0, channel.size(), windowSize, automate);
+            automate.finish();
+        } finally {
+            if (metrics != null) {
+                metrics.setBytes(channel.size());
+                automate.addCounters(metrics);
+            }
+        }
+    }
+
+    /**
+     * Maps a range of the file window by window and feeds it to the automate
+     * @param channel the file
+     * @param from offset of the first byte
+     * @param to offset after the last byte
+     * @param windowSize number of bytes mapped at once
+     * @param automate the automate
+     * @throws IOException
+     */
+    static void feed(FileChannel channel, long from, long to,
+                     int windowSize, ByteAutomate automate) throws IOException {
+        for (long start = from; start < to; start += windowSize) {
+            int length = (int) Math.min(windowSize, to - start);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            automate.feed(window, start, 0, length);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
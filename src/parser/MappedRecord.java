@@ -0,0 +1,153 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * parser.MappedRecord is a view of a line parsed from bytes.
+ * Fields are exposed as byte slices (offset; length) of the input
+ * and are decoded into strings only on request. The view is reused
+ * for the next line, so it is valid only inside the handler
+ */
+public final class MappedRecord {
+    // automate, which owns the fields
+    private final ByteAutomate automate;
+
+    // number of fields
+    private int size;
+
+    // number of the line, where the record ends
+    private int line;
+
+    /**
+     * Creates a view of the automate's current line
+     * @param automate owner of the fields
+     */
+    MappedRecord(ByteAutomate automate) {
+        this.automate = automate;
+    }
+
+    /**
+     * Sets the size of the next record
+     * @param size number of fields
+     * @param line number of the line, where the record ends
+     */
+    void set(int size, int line) {
+        this.size = size;
+        this.line = line;
+    }
+
+    /**
+     * Returns number of fields
+     * @return number of fields
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns number of the line, where the record ends
+     * @return number of the line
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns offset of the field in the input
+     * @param i index of the field
+     * @return offset of the first byte, or -1 if the field is empty or
+     * its bytes are not a continuous part of the input (quotes, spaces)
+     */
+    public long getOffset(int i) {
+        check(i);
+        return automate.offset(i);
+    }
+
+    /**
+     * Returns length of the field in bytes
+     * @param i index of the field
+     * @return number of bytes
+     */
+    public int getLength(int i) {
+        check(i);
+        return automate.length(i);
+    }
+
+    /**
+     * Returns a byte of the field
+     * @param i index of the field
+     * @param k index of the byte inside the field
+     * @return the byte
+     */
+    public byte byteAt(int i, int k) {
+        check(i);
+        if (k < 0 || k >= automate.length(i)) {
+            throw new IndexOutOfBoundsException("Byte " + k + " of " + automate.length(i));
+        }
+        return automate.byteAt(i, k);
+    }
+
+    /**
+     * Copies bytes of the field
+     * @param i index of the field
+     * @param dst destination array
+     * @param dstOff index in the destination
+     */
+    public void copyTo(int i, byte[] dst, int dstOff) {
+        check(i);
+        automate.copy(i, dst, dstOff);
+    }
+
+    /**
+     * Decodes the field from UTF-8
+     * @param i index of the field
+     * @return the field
+     */
+    public String getString(int i) {
+        return getString(i, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the field
+     * @param i index of the field
+     * @param charset charset of the input
+     * @return the field
+     */
+    public String getString(int i, Charset charset) {
+        byte[] bytes = new byte[getLength(i)];
+        automate.copy(i, bytes, 0);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Decodes all the fields from UTF-8
+     * @return list of the fields
+     */
+    public ArrayList<String> toList() {
+        ArrayList<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(getString(i));
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    /**
+     * Checks the field index
+     * @param i index of the field
+     */
+    private void check(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Field " + i + " of " + size);
+    }
+}
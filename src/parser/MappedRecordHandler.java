@@ -0,0 +1,20 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+
+/**
+ * The parser.MappedRecordHandler interface is the callback for
+ * byte-level parsing of mapped files
+ */
+public interface MappedRecordHandler {
+    /**
+     * Handles a parsed record
+     * @param record parsed record, which is valid only during the call
+     * @throws CSVParseException to stop parsing
+     */
+    void handle(MappedRecord record);
+}
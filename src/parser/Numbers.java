@@ -0,0 +1,194 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+
+/**
+ * parser.Numbers decodes numbers directly from symbol buffers,
+ * without creating a String for plain decimal numbers
+ */
+final class Numbers {
+    // exact powers of ten
+    private static final double[] POWERS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // the biggest mantissa, which is exact in double
+    private static final long MAX_EXACT = 1L << 53;
+
+    private Numbers() {
+    }
+
+    /**
+     * Decodes a decimal long
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @return the number
+     * @throws NumberFormatException symbols are not a long
+     */
+    static long parseLong(char[] s, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (s[i] == '-' || s[i] == '+')) {
+            negative = s[i] == '-';
+            i++;
+        }
+        if (i == to) throw notANumber(s, from, to);
+
+        // accumulate negatively, since Long.MIN_VALUE has no positive pair
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = s[i] - '0';
+            if (digit < 0 || digit > 9) throw notANumber(s, from, to);
+            if (result < (limit + digit) / 10) throw notANumber(s, from, to);
+            result = result * 10 - digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    /**
+     * Decodes a double. Plain decimals with up to 15 digits are decoded
+     * directly, longer ones and exponents fall back to Double.parseDouble.
+     * Only decimal forms are accepted, the other forms of Double.parseDouble,
+     * such as "1.5f", "NaN", "Infinity", hex or surrounding spaces, are not
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @return the number
+     * @throws NumberFormatException symbols are not a double
+     */
+    static double parseDouble(char[] s, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (s[i] == '-' || s[i] == '+')) {
+            negative = s[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;                      // number of digits after the point
+        for (; i < to; i++) {
+            char c = s[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction >= 0) fraction++;
+                if (++digits > 15) break;
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+
+        if (i < to || digits == 0 || mantissa >= MAX_EXACT) {
+            if (!isDecimal(s, from, to)) throw notANumber(s, from, to);
+            try {
+                return Double.parseDouble(new String(s, from, to - from));
+            } catch (NumberFormatException e) {
+                throw notANumber(s, from, to);
+            }
+        }
+
+        double value = fraction > 0 ? mantissa / POWERS[fraction] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes an ISO date yyyy-MM-dd
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @return number of days since 1970-01-01
+     * @throws NumberFormatException symbols are not a date
+     */
+    static long parseDate(char[] s, int from, int to) {
+        if (to - from != 10 || s[from + 4] != '-' || s[from + 7] != '-') {
+            throw new NumberFormatException("Not a date \"" + new String(s, from, to - from) + "\"");
+        }
+
+        int year = digits(s, from, from + 4);
+        int month = digits(s, from + 5, from + 7);
+        int day = digits(s, from + 8, from + 10);
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        int monthDays = month == 2 ? (leap ? 29 : 28) : (month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > monthDays) {
+            throw new NumberFormatException("Not a date \"" + new String(s, from, to - from) + "\"");
+        }
+
+        // days from the civil date, the year starts in March
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Decodes unsigned decimal digits
+     * @param s symbols
+     * @param from index of the first digit
+     * @param to index after the last digit
+     * @return the number, -1 if a symbol is not a digit
+     */
+    private static int digits(char[] s, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            int digit = s[i] - '0';
+            if (digit < 0 || digit > 9) return -1;
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * Checks if symbols are a decimal [+-]digits[.digits][(e|E)[+-]digits]
+     * with at least one digit before the exponent
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @return true if the symbols are a decimal
+     */
+    private static boolean isDecimal(char[] s, int from, int to) {
+        int i = from;
+        if (i < to && (s[i] == '-' || s[i] == '+')) i++;
+
+        int digits = 0;
+        boolean point = false;
+        for (; i < to; i++) {
+            if (s[i] >= '0' && s[i] <= '9') digits++;
+            else if (s[i] == '.' && !point) point = true;
+            else break;
+        }
+        if (digits == 0) return false;
+        if (i == to) return true;
+
+        if (s[i] != 'e' && s[i] != 'E') return false;
+        i++;
+        if (i < to && (s[i] == '-' || s[i] == '+')) i++;
+        if (i == to) return false;
+        for (; i < to; i++) {
+            if (s[i] < '0' || s[i] > '9') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the exception for a malformed number
+     * @param s symbols
+     * @param from index of the first symbol
+     * @param to index after the last symbol
+     * @return the exception
+     */
+    private static NumberFormatException notANumber(char[] s, int from, int to) {
+        return new NumberFormatException("Not a number \"" + new String(s, from, to - from) + "\"");
+    }
+}
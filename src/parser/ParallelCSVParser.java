@@ -0,0 +1,393 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The parser.ParallelCSVParser class parses a local file on several cores.
+ * The file is split into byte ranges, which are scanned in parallel for
+ * quotes and line separators. A line separator starts a new chunk only if
+ * the number of quotes before it is even, since a quoted field may contain
+ * line separators. Chunks are parsed in parallel by separate automates
+ * and their records are stitched in order. Line numbers, errors and the
+ * equal number of fields in all lines are the same as in the sequential
+ * parsing. An escaped quote or line separator can't be told apart by the
+ * scan, so a file of a dialect with an escape is parsed as a single chunk
+ */
+public class ParallelCSVParser {
+    // minimal size of a range for the automatic number of ranges
+    public static final int MIN_RANGE_SIZE = 1024 * 1024;
+
+    // maximal size of a range, which is mapped at once
+    private static final int MAX_RANGE_SIZE = 1024 * 1024 * 1024;
+
+    // pool, which runs the scanning and parsing tasks
+    private final ForkJoinPool pool;
+
+    // number of ranges, 0 if it depends on the size of the file
+    private final int ranges;
+
+    // dialect of the files
+    private final CSVDialect dialect;
+
+    /**
+     * Creates a parser, which runs in the common pool
+     */
+    public ParallelCSVParser() {
+        this(ForkJoinPool.commonPool(), 0);
+    }
+
+    /**
+     * Creates a parser
+     * @param pool pool, which runs the tasks
+     */
+    public ParallelCSVParser(ForkJoinPool pool) {
+        this(pool, 0);
+    }
+
+    /**
+     * Creates a parser with a fixed number of ranges
+     * @param pool pool, which runs the tasks
+     * @param ranges number of ranges, 0 if it depends on the size of the file
+     */
+    public ParallelCSVParser(ForkJoinPool pool, int ranges) {
+        this(pool, ranges, CSVDialect.DEFAULT);
+    }
+
+    /**
+     * Creates a parser of a dialect
+     * @param pool pool, which runs the tasks
+     * @param ranges number of ranges, 0 if it depends on the size of the file
+     * @param dialect dialect of the files
+     */
+    public ParallelCSVParser(ForkJoinPool pool, int ranges, CSVDialect dialect) {
+        if (ranges < 0) throw new IllegalArgumentException("Number of ranges must not be negative");
+
+        this.pool = pool;
+        this.ranges = ranges;
+        this.dialect = dialect;
+    }
+
+    /**
+     * Parses the file
+     * @param path the file
+     * @return two-dimensional array of strings
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    public ArrayList<ArrayList<String>> parse(Path path) throws IOException {
+        ArrayList<ArrayList<String>> fields = new ArrayList<>();
+        for (Chunk chunk : parseChunks(path, null, false, null)) {
+            fields.addAll(chunk.records);
+        }
+        return fields;
+    }
+
+    /**
+     * Parses the file into a columnar table, each chunk decodes its
+     * fields into its own table and the tables are joined in order
+     * @param path the file
+     * @param schema types of the columns, null if all the columns are text
+     * @return the table
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    public CSVTable parseTable(Path path, CSVSchema schema) throws IOException {
+        return parseTable(path, schema, null);
+    }
+
+    /**
+     * Parses the file into a columnar table
+     * @param path the file
+     * @param schema types of the columns, null if all the columns are text
+     * @param metrics receiver of the counters of all the chunks, null if they are not needed
+     * @return the table
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    CSVTable parseTable(Path path, CSVSchema schema, ParseMetrics metrics) throws IOException {
+        List<Chunk> chunks = parseChunks(path, schema, true, metrics);
+        CSVTable table = new CSVTable(schema);
+        for (Chunk chunk : chunks) {
+            table.addAll(chunk.table);
+        }
+        return table;
+    }
+
+    /**
+     * Splits the file into chunks and parses them in parallel
+     * @param path the file
+     * @param schema types of the columns, null if all the columns are text
+     * @param columnar true if records are stored into tables
+     * @param metrics receiver of the counters, null if they are not needed
+     * @return parsed chunks in order of the file
+     * @throws IOException
+     * @throws CSVParseException error occurred during parsing
+     */
+    private List<Chunk> parseChunks(Path path, CSVSchema schema, boolean columnar,
+                                    ParseMetrics metrics) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (metrics != null) metrics.setBytes(size);
+
+            int rangesNumb = ranges > 0 ? ranges
+                    : (int) Math.min(pool.getParallelism() * 4L, size / MIN_RANGE_SIZE);
+            rangesNumb = (int) Math.max(rangesNumb, size / MAX_RANGE_SIZE + 1);
+            rangesNumb = (int) Math.max(1, Math.min(rangesNumb, size));
+            if (dialect.getEscape() != CSVDialect.NONE) rangesNumb = 1;
+
+            // scan ranges for quotes and line separators
+            List<Callable<RangeScan>> scans = new ArrayList<>();
+            for (int i = 0; i < rangesNumb; i++) {
+                long from = size * i / rangesNumb;
+                long to = size * (i + 1) / rangesNumb;
+                scans.add(() -> scan(channel, from, to, dialect.getQuote()));
+            }
+            List<RangeScan> scanned = invokeAll(scans);
+
+            // find starts of the chunks
+            ArrayList<Long> starts = new ArrayList<>();
+            ArrayList<Integer> rows = new ArrayList<>();
+            starts.add(0L);
+            rows.add(1);
+
+            int quotes = 0;
+            int lines = 0;
+            for (RangeScan range : scanned) {
+                int parity = quotes & 1;
+                long sep = range.firstSeps[parity];
+                if (range.from > 0 && sep >= 0 && sep >= starts.get(starts.size() - 1)) {
+                    long[] next = skipSeparators(channel, sep, size);
+                    if (next[0] < size && next[0] > starts.get(starts.size() - 1)) {
+                        starts.add(next[0]);
+                        rows.add(1 + lines + range.sepsBefore[parity] + (int) next[1]);
+                    }
+                }
+                quotes += range.quotes;
+                lines += range.seps;
+            }
+            starts.add(size);
+
+            // parse chunks, only the first one may start with a header
+            List<Callable<Chunk>> parsers = new ArrayList<>();
+            for (int i = 0; i + 1 < starts.size(); i++) {
+                long from = starts.get(i);
+                long to = starts.get(i + 1);
+                int row = rows.get(i);
+                CSVTable table = !columnar ? null
+                        : new CSVTable(i == 0 || schema == null ? schema : schema.withoutHeader());
+                parsers.add(() -> parseChunk(channel, dialect.table(), from, to, row, table));
+            }
+            List<Chunk> chunks = invokeAll(parsers);
+            if (metrics != null) {
+                for (Chunk chunk : chunks) {
+                    chunk.automate.addCounters(metrics);
+                }
+            }
+
+            // check the chunks in order
+            int lineSize = -1;
+            for (Chunk chunk : chunks) {
+                if (lineSize >= 0 && chunk.firstSize >= 0) {
+                    if (chunk.firstSize > lineSize) {
+                        throw new CSVParseException("Too much fields", chunk.firstLine);
+                    } else if (chunk.firstSize < lineSize) {
+                        throw new CSVParseException("Not enough fields", chunk.firstLine);
+                    }
+                }
+                if (chunk.error != null) throw chunk.error;
+
+                if (lineSize < 0) lineSize = chunk.firstSize;
+            }
+
+            return chunks;
+        }
+    }
+
+    /**
+     * Runs the tasks in the pool and waits for their results
+     * @param tasks the tasks
+     * @param <T> type of the result
+     * @return results in order of the tasks
+     * @throws IOException
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Parsing is interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * Counts quotes and line separators of a range and finds the
+     * first separators after even and odd number of quotes
+     * @param channel the file
+     * @param from offset of the first byte
+     * @param to offset after the last byte
+     * @param quote quote of the dialect, CSVDialect.NONE if fields are not quoted
+     * @return result of the scan
+     * @throws IOException
+     */
+    private static RangeScan scan(FileChannel channel, long from, long to, char quote) throws IOException {
+        RangeScan range = new RangeScan(from);
+        if (from == to) return range;
+
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        byte prev = from > 0 ? readByte(channel, from - 1) : 0;
+
+        for (int i = 0, len = buf.limit(); i < len; i++) {
+            byte b = buf.get(i);
+            if (b == quote && quote != CSVDialect.NONE) {
+                range.quotes++;
+            } else if (b == '\r' || (b == '\n' && prev != '\r')) {
+                int parity = range.quotes & 1;
+                if (range.firstSeps[parity] < 0) {
+                    range.firstSeps[parity] = from + i;
+                    range.sepsBefore[parity] = range.seps;
+                }
+                range.seps++;
+            }
+            prev = b;
+        }
+
+        return range;
+    }
+
+    /**
+     * Skips line separators and empty lines
+     * @param channel the file
+     * @param pos offset of a line separator
+     * @param size size of the file
+     * @return offset of the next non-empty line and number of skipped lines
+     * @throws IOException
+     */
+    private static long[] skipSeparators(FileChannel channel, long pos, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        long lines = 0;
+        byte prev = 0;
+
+        while (pos < size) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            for (int i = 0; i < n; i++, pos++) {
+                byte b = buf.get(i);
+                if (b != '\n' && b != '\r') return new long[] {pos, lines};
+                if (b == '\r' || prev != '\r') lines++;
+                prev = b;
+            }
+        }
+
+        return new long[] {size, lines};
+    }
+
+    /**
+     * Reads a byte of the file
+     * @param channel the file
+     * @param pos offset of the byte
+     * @return the byte
+     * @throws IOException
+     */
+    private static byte readByte(FileChannel channel, long pos) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1);
+        channel.read(buf, pos);
+        return buf.get(0);
+    }
+
+    /**
+     * Parses a chunk, which starts at the beginning of a line
+     * @param channel the file
+     * @param transitions automaton of the dialect
+     * @param from offset of the first byte
+     * @param to offset after the last byte
+     * @param row number of the first line
+     * @param table receiver of the records, null if they are stored as lists
+     * @return parsed records or the error
+     * @throws IOException
+     */
+    private static Chunk parseChunk(FileChannel channel, TransitionTable transitions, long from, long to,
+                                    int row, CSVTable table) throws IOException {
+        Chunk chunk = new Chunk(table);
+        ByteAutomate automate = new ByteAutomate(transitions, record -> {
+            if (chunk.firstSize < 0) {
+                chunk.firstSize = record.size();
+                chunk.firstLine = record.getLine();
+            }
+            if (table != null) table.addRow(record);
+            else chunk.records.add(record.toList());
+        }, row);
+        chunk.automate = automate;
+
+        try {
+            MappedCSVReader.feed(channel, from, to, MappedCSVReader.DEFAULT_WINDOW_SIZE, automate);
+            automate.finish();
+        } catch (CSVParseException e) {
+            chunk.error = e;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Result of scanning a range
+     */
+    private static class RangeScan {
+        private final long from;                        // offset of the range
+        private int quotes;                             // number of quotes
+        private int seps;                               // number of line separators
+
+        // first separators after even and odd number of quotes, -1 if none
+        private final long[] firstSeps = {-1, -1};
+
+        // numbers of the separators before the first ones
+        private final int[] sepsBefore = new int[2];
+
+        public RangeScan(long from) {
+            this.from = from;
+        }
+    }
+
+    /**
+     * Parsed chunk
+     */
+    private static class Chunk {
+        private final ArrayList<ArrayList<String>> records = new ArrayList<>();
+        private final CSVTable table;                   // records stored by columns, or null
+        private ByteAutomate automate;                  // automate, which keeps counters of the chunk
+        private int firstSize = -1;                     // number of fields in the first line
+        private int firstLine;                          // number of the first line
+        private CSVParseException error;                // error occurred during parsing
+
+        public Chunk(CSVTable table) {
+            this.table = table;
+        }
+    }
+}
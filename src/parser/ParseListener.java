@@ -0,0 +1,19 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+
+/**
+ * The parser.ParseListener interface receives metrics of the stages
+ * of parser.CSVProcessor: loading, parsing, serialization and so on
+ */
+public interface ParseListener {
+    /**
+     * Handles metrics of a stage
+     * @param metrics metrics of the stage, which is completed or stopped by an error
+     */
+    void stageCompleted(ParseMetrics metrics);
+}
@@ -0,0 +1,141 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+/**
+ * parser.ParseMetrics describes a completed stage of parser.CSVProcessor:
+ * its time, size of the input and counters of the parsed records.
+ * Metrics are collected only while somebody listens, otherwise a stage
+ * costs nothing more than the counters of the automate
+ */
+public final class ParseMetrics {
+    private final String stage;             // name of the stage, e.g. "parse"
+    private final long startNanos;          // System.nanoTime() at the start
+
+    private long nanos;                     // duration of the stage
+    private long bytes;                     // size of the input, bytes of a file or symbols of a text
+    private long records;                   // emitted records, the header is counted
+    private long lines;                     // loaded lines, a quoted field might span several
+    private long fields;                    // emitted fields
+    private long quotedFields;              // fields, which were quoted
+    private long trailingSpaces;            // spaces buffered before a possible field end
+
+    // error of parsing, reading or writing, which stopped the stage, null if it is completed
+    private Exception error;
+
+    /**
+     * Starts metrics of a stage
+     * @param stage name of the stage
+     */
+    ParseMetrics(String stage) {
+        this.stage = stage;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Adds counters of an automate, several automates of a stage might add theirs
+     * @param records emitted records
+     * @param fields emitted fields
+     * @param quotedFields quoted fields
+     * @param trailingSpaces buffered spaces
+     */
+    synchronized void add(long records, long fields, long quotedFields, long trailingSpaces) {
+        this.records += records;
+        this.fields += fields;
+        this.quotedFields += quotedFields;
+        this.trailingSpaces += trailingSpaces;
+    }
+
+    /**
+     * Sets size of the input
+     * @param bytes bytes of a file or symbols of a text
+     */
+    void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Sets number of records, if they were not counted by an automate
+     * @param records number of records
+     */
+    void setRecords(long records) {
+        this.records = records;
+    }
+
+    /**
+     * Sets number of the loaded lines
+     * @param lines number of lines
+     */
+    void setLines(long lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * Completes the stage
+     * @param error error, which stopped the stage, null if it is completed
+     */
+    void finish(Exception error) {
+        nanos = System.nanoTime() - startNanos;
+        this.error = error;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getFields() {
+        return fields;
+    }
+
+    public long getQuotedFields() {
+        return quotedFields;
+    }
+
+    /**
+     * Returns part of the fields, which were quoted
+     * @return the ratio, 0 if there are no fields
+     */
+    public double getQuotedFieldRatio() {
+        return fields == 0 ? 0 : (double) quotedFields / fields;
+    }
+
+    public long getTrailingSpaces() {
+        return trailingSpaces;
+    }
+
+    /**
+     * Returns the error: line and column of a parser.CSVParseException
+     * tell where parsing stopped, an IOException failed reading or writing
+     * @return the error, null if the stage is completed
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return stage + ": " + nanos / 1000 + " us, " + bytes + " bytes, " + records + " records, "
+                + (lines == 0 ? "" : lines + " lines, ")
+                + fields + " fields, " + quotedFields + " quoted, " + trailingSpaces + " trailing spaces"
+                + (error == null ? "" : ", " + error.getMessage());
+    }
+}
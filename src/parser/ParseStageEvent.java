@@ -0,0 +1,99 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * parser.ParseStageEvent is the flight recorder event of a completed
+ * stage of parser.CSVProcessor. It is disabled unless a recording
+ * enables "parser.ParseStage". Loading of an event class starts the
+ * recorder's machinery, so the class is used only once the recorder
+ * is initialized
+ */
+@Name("parser.ParseStage")
+@Label("CSV Parse Stage")
+@Category("CSV Parser")
+@Description("Completed stage of a csv processor")
+@StackTrace(false)
+final class ParseStageEvent extends Event {
+    // instance, which only checks the enabled flag, so the recorder is not started by the check
+    private static final ParseStageEvent PROBE = new ParseStageEvent();
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+
+    @Label("Input Size")
+    @Description("Bytes of a file or symbols of a text")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+
+    @Label("Records")
+    long records;
+
+    @Label("Lines")
+    @Description("Loaded lines, counted by the load stage only")
+    long lines;
+
+    @Label("Fields")
+    long fields;
+
+    @Label("Quoted Fields")
+    long quotedFields;
+
+    @Label("Trailing Spaces")
+    long trailingSpaces;
+
+    @Label("Error Line")
+    @Description("Line of the parse error, 0 if the stage is completed or failed reading or writing")
+    long errorLine;
+
+    @Label("Error")
+    String error;
+
+    /**
+     * Checks if a recording enabled the event
+     * @return true if the event is enabled
+     */
+    static boolean isRecording() {
+        return PROBE.isEnabled();
+    }
+
+    /**
+     * Commits the event of a stage, if it is enabled
+     * @param metrics metrics of the stage
+     */
+    static void commit(ParseMetrics metrics) {
+        ParseStageEvent event = new ParseStageEvent();
+        if (!event.shouldCommit()) return;
+
+        event.stage = metrics.getStage();
+        event.time = metrics.getNanos();
+        event.bytes = metrics.getBytes();
+        event.records = metrics.getRecords();
+        event.lines = metrics.getLines();
+        event.fields = metrics.getFields();
+        event.quotedFields = metrics.getQuotedFields();
+        event.trailingSpaces = metrics.getTrailingSpaces();
+        Exception error = metrics.getError();
+        if (error != null) {
+            if (error instanceof CSVParseException) event.errorLine = ((CSVParseException) error).getLine();
+            event.error = error.getMessage();
+        }
+        event.commit();
+    }
+}
@@ -0,0 +1,155 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The parser.ParseStatistics class sums metrics of the stages of any
+ * number of processors and exposes the totals as an MXBean. The only
+ * instance is registered in the platform MBean server on first use
+ * and is added to a processor as a listener
+ */
+public final class ParseStatistics implements ParseStatisticsMXBean, ParseListener {
+    // name of the registered bean
+    public static final String OBJECT_NAME = "parser:type=ParseStatistics";
+
+    // the registered instance, created on demand
+    private static ParseStatistics instance;
+
+    private final LongAdder stages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder fields = new LongAdder();
+    private final LongAdder quotedFields = new LongAdder();
+    private final LongAdder trailingSpaces = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    // total time of each stage
+    private final ConcurrentHashMap<String, LongAdder> stageNanos = new ConcurrentHashMap<>();
+
+    // last error of parsing, reading or writing
+    private volatile Exception lastError;
+
+    private ParseStatistics() {
+    }
+
+    /**
+     * Returns the instance, which is registered in the platform MBean server
+     * @return the instance
+     * @throws IllegalStateException the bean can't be registered
+     */
+    public static synchronized ParseStatistics register() {
+        if (instance == null) {
+            ParseStatistics statistics = new ParseStatistics();
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+                server.registerMBean(statistics, name);
+            } catch (JMException e) {
+                throw new IllegalStateException("Can't register " + OBJECT_NAME, e);
+            }
+            instance = statistics;
+        }
+        return instance;
+    }
+
+    @Override
+    public void stageCompleted(ParseMetrics metrics) {
+        stages.increment();
+        bytes.add(metrics.getBytes());
+        records.add(metrics.getRecords());
+        fields.add(metrics.getFields());
+        quotedFields.add(metrics.getQuotedFields());
+        trailingSpaces.add(metrics.getTrailingSpaces());
+        stageNanos.computeIfAbsent(metrics.getStage(), stage -> new LongAdder()).add(metrics.getNanos());
+        if (metrics.getError() != null) {
+            errors.increment();
+            lastError = metrics.getError();
+        }
+    }
+
+    @Override
+    public long getStages() {
+        return stages.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getRecords() {
+        return records.sum();
+    }
+
+    @Override
+    public long getFields() {
+        return fields.sum();
+    }
+
+    @Override
+    public long getQuotedFields() {
+        return quotedFields.sum();
+    }
+
+    @Override
+    public double getQuotedFieldRatio() {
+        long total = fields.sum();
+        return total == 0 ? 0 : (double) quotedFields.sum() / total;
+    }
+
+    @Override
+    public long getTrailingSpaces() {
+        return trailingSpaces.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getLastErrorLine() {
+        Exception error = lastError;
+        return error instanceof CSVParseException ? ((CSVParseException) error).getLine() : 0;
+    }
+
+    @Override
+    public String getLastErrorMessage() {
+        Exception error = lastError;
+        return error == null ? null : error.getMessage();
+    }
+
+    @Override
+    public Map<String, Long> getStageMillis() {
+        Map<String, Long> millis = new TreeMap<>();
+        stageNanos.forEach((stage, nanos) -> millis.put(stage, nanos.sum() / 1_000_000));
+        return millis;
+    }
+
+    @Override
+    public void reset() {
+        stages.reset();
+        bytes.reset();
+        records.reset();
+        fields.reset();
+        quotedFields.reset();
+        trailingSpaces.reset();
+        errors.reset();
+        stageNanos.clear();
+        lastError = null;
+    }
+}
@@ -0,0 +1,49 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.util.Map;
+
+/**
+ * The parser.ParseStatisticsMXBean interface exposes totals of the
+ * parsing stages through JMX
+ */
+public interface ParseStatisticsMXBean {
+    long getStages();
+
+    long getBytesRead();
+
+    long getRecords();
+
+    long getFields();
+
+    long getQuotedFields();
+
+    double getQuotedFieldRatio();
+
+    long getTrailingSpaces();
+
+    long getErrors();
+
+    /**
+     * Returns line of the last error
+     * @return the line, 0 if there were no errors or the last one was not a parse error
+     */
+    long getLastErrorLine();
+
+    String getLastErrorMessage();
+
+    /**
+     * Returns total time of each stage
+     * @return milliseconds by name of the stage
+     */
+    Map<String, Long> getStageMillis();
+
+    /**
+     * Clears the totals
+     */
+    void reset();
+}
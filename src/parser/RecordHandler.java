@@ -0,0 +1,21 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+
+/**
+ * The parser.RecordHandler interface is the callback for
+ * streaming parsing, it receives records one by one as soon as
+ * the automate completes them
+ */
+public interface RecordHandler {
+    /**
+     * Handles a parsed record
+     * @param record parsed record, which is valid only during the call
+     * @throws CSVParseException to stop parsing
+     */
+    void handle(CSVRecord record);
+}
@@ -0,0 +1,21 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.util.List;
+
+/**
+ * The parser.RejectHandler interface receives rows, which are skipped
+ * by a lenient parsing instead of stopping it
+ */
+public interface RejectHandler {
+    /**
+     * Handles a rejected row
+     * @param error reason of the rejection with the line and column
+     * @param fields fields of the row, which were read before the error
+     */
+    void reject(CSVParseException error, List<String> fields);
+}
@@ -0,0 +1,56 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.util.List;
+
+/**
+ * parser.Rejects counts rows rejected by a lenient parsing and passes
+ * them to the parser.RejectHandler. Parsing is stopped by the error,
+ * which exceeds the limit
+ */
+final class Rejects {
+    // receiver of the rejected rows
+    private final RejectHandler handler;
+
+    // maximal number of rejected rows
+    private final int maxErrors;
+
+    // number of rejected rows
+    private int count;
+
+    /**
+     * Creates a counter of rejected rows
+     * @param handler receiver of the rejected rows
+     * @param maxErrors maximal number of rejected rows
+     */
+    Rejects(RejectHandler handler, int maxErrors) {
+        if (maxErrors < 0) throw new IllegalArgumentException("Limit of errors must not be negative");
+
+        this.handler = handler;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Rejects a row
+     * @param error reason of the rejection
+     * @param fields fields of the row, which were read before the error
+     * @throws CSVParseException the error, if the limit is exceeded
+     */
+    void reject(CSVParseException error, List<String> fields) {
+        if (count == maxErrors) throw error;
+        count++;
+        handler.reject(error, fields);
+    }
+
+    /**
+     * Returns number of rejected rows
+     * @return the number
+     */
+    int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,201 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.util.List;
+
+/**
+ * parser.RowFilter is parser.CSVFilter compiled for the columns of a
+ * file: names are replaced by indices, so a field is tested and
+ * selected by its index in the line. Each automate compiles its own
+ * filter, the filter keeps buffers of the automate
+ */
+final class RowFilter {
+    // columns of the line in order of the record, null if all the columns are passed
+    private final int[] projection;
+
+    // columns of the line, which are copied
+    private final boolean[] copied;
+
+    // columns of the line, which are tested
+    private final boolean[] tested;
+
+    // conditions of the rows and their columns in the line
+    private final CSVFilter.Condition[] conditions;
+    private final int[] condColumns;
+
+    // fields of the record, reused from line to line
+    private final StringBuilder[] selected;
+
+    // buffer for a number, which is tested by a range
+    private char[] scratch;
+
+    /**
+     * Compiles a filter
+     * @param filter the filter
+     * @param header fields of the header, null if there is no header
+     * @param schema schema of the table, which tells how names are compared, null if there is none
+     * @param line number of the line of the header
+     * @throws CSVParseException a named column is not in the header
+     * @throws IllegalArgumentException columns are found by names, but there is no header
+     */
+    RowFilter(CSVFilter filter, List<String> header, CSVSchema schema, int line) {
+        if (header == null && filter.needsHeader()) {
+            throw new IllegalArgumentException("Columns are found by names, but there is no header");
+        }
+
+        int[] columns = filter.columns();
+        if (filter.names() != null) {
+            String[] names = filter.names();
+            columns = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                columns[i] = find(header, schema, names[i], line);
+            }
+        }
+
+        conditions = filter.conditions();
+        condColumns = new int[conditions.length];
+        int size = 0;
+        for (int i = 0; i < conditions.length; i++) {
+            CSVFilter.Condition condition = conditions[i];
+            condColumns[i] = condition.name != null ? find(header, schema, condition.name, line) : condition.column;
+            size = Math.max(size, condColumns[i] + 1);
+        }
+        if (columns != null) {
+            for (int col : columns) {
+                size = Math.max(size, col + 1);
+            }
+        }
+
+        projection = columns;
+        copied = new boolean[size];
+        tested = new boolean[size];
+        for (int col : condColumns) {
+            copied[col] = true;
+            tested[col] = true;
+        }
+        if (columns != null) {
+            for (int col : columns) {
+                copied[col] = true;
+            }
+        }
+        selected = columns != null ? new StringBuilder[columns.length] : null;
+        scratch = new char[32];
+    }
+
+    /**
+     * Checks if symbols of a column are copied
+     * @param col index of the column in the line
+     * @return true if the column is selected or tested
+     */
+    boolean copies(int col) {
+        return projection == null || (col < copied.length && copied[col]);
+    }
+
+    /**
+     * Checks that selected and tested columns are in the line
+     * @param size number of fields in the line
+     * @param line number of the line
+     * @throws CSVParseException a column is not in the line
+     */
+    void check(int size, int line) {
+        if (copied.length > size) {
+            throw new CSVParseException("Column " + (copied.length - 1) + " is filtered, but there are "
+                    + size + " fields", line);
+        }
+    }
+
+    /**
+     * Tests a completed field
+     * @param col index of the column in the line
+     * @param field the field
+     * @return false if the row is dropped
+     */
+    boolean test(int col, StringBuilder field) {
+        if (col >= tested.length || !tested[col]) return true;
+
+        for (int i = 0; i < conditions.length; i++) {
+            if (condColumns[i] == col && !test(conditions[i], field)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the selected fields of the line
+     * @param fields fields of the line
+     * @return fields in order of the record
+     */
+    StringBuilder[] select(StringBuilder[] fields) {
+        if (projection == null) return fields;
+
+        for (int i = 0; i < projection.length; i++) {
+            selected[i] = fields[projection[i]];
+        }
+        return selected;
+    }
+
+    /**
+     * Returns number of the selected fields
+     * @param size number of fields in the line
+     * @return number of fields in the record
+     */
+    int selectedSize(int size) {
+        return projection == null ? size : projection.length;
+    }
+
+    /**
+     * Tests a field by a condition
+     * @param condition the condition
+     * @param field the field
+     * @return true if the field meets the condition
+     */
+    private boolean test(CSVFilter.Condition condition, StringBuilder field) {
+        switch (condition.kind) {
+            case CSVFilter.EQUALS:
+                return condition.value.contentEquals(field);
+            case CSVFilter.PREFIX:
+                String prefix = condition.value;
+                if (field.length() < prefix.length()) return false;
+                for (int k = 0; k < prefix.length(); k++) {
+                    if (field.charAt(k) != prefix.charAt(k)) return false;
+                }
+                return true;
+            default:
+                int len = field.length();
+                if (len == 0) return false;
+                if (scratch.length < len) scratch = new char[Math.max(len, scratch.length * 2)];
+                field.getChars(0, len, scratch, 0);
+                try {
+                    double value = Numbers.parseDouble(scratch, 0, len);
+                    return value >= condition.min && value <= condition.max;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+        }
+    }
+
+    /**
+     * Finds a column by name, the names are compared as by parser.CSVTable.column()
+     * @param header fields of the header
+     * @param schema schema of the table, null if there is none
+     * @param name name of the column
+     * @param line number of the line of the header
+     * @return index of the column
+     * @throws CSVParseException the header has no such column, or has it twice
+     */
+    private static int find(List<String> header, CSVSchema schema, String name, int line) {
+        String key = schema != null ? schema.key(name) : name;
+        int col = -1;
+        for (int i = 0; i < header.size(); i++) {
+            String field = header.get(i);
+            if (!key.equals(schema != null ? schema.key(field) : field)) continue;
+            if (col >= 0) throw new CSVParseException("Column \"" + name + "\" is in the header twice", line);
+            col = i;
+        }
+        if (col < 0) throw new CSVParseException("No column \"" + name + "\" in the header", line);
+        return col;
+    }
+}
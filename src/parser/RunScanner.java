@@ -0,0 +1,115 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * parser.RunScanner finds the end of a run of symbols, which the
+ * automaton would append one by one without changing its state, e.g.
+ * a plain unquoted field. Bytes are tested 8 at a time in a long
+ * (SWAR): a byte equal to a stop symbol is found as a zero byte of
+ * the long xor the repeated symbol. Non-ascii bytes always stop a
+ * run, since their columns are counted by symbols.
+ * Bulk scanning is on by default and is switched off by the system
+ * property parser.bulkScan=false, which is read when an automate is
+ * created, so both paths might be compared in the same process
+ */
+final class RunScanner {
+    // name of the system property, which switches bulk scanning
+    static final String PROPERTY = "parser.bulkScan";
+
+    // low 7 bits and high bit of every byte in a long
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private RunScanner() {
+    }
+
+    /**
+     * Checks if bulk scanning is switched on
+     * @return false if the property is set to false
+     */
+    static boolean enabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(PROPERTY));
+    }
+
+    /**
+     * Finds the first byte, which stops a run
+     * @param buf the bytes
+     * @param from index of the first byte of the run
+     * @param to index after the last byte to scan
+     * @param stops stop symbols, each repeated in all 8 bytes of a long
+     * @return index of the stop byte, to if there is none
+     */
+    static int scan(ByteBuffer buf, int from, int to, long[] stops) {
+        boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
+
+        for (; i + 8 <= to; i += 8) {
+            long word = buf.getLong(i);
+            long found = word & HIGH_BITS;                  // non-ascii bytes
+            for (long stop : stops) {
+                found |= zeroBytes(word ^ stop);
+            }
+            if (found != 0) {
+                return i + (bigEndian ? Long.numberOfLeadingZeros(found)
+                                      : Long.numberOfTrailingZeros(found)) / 8;
+            }
+        }
+
+        for (; i < to; i++) {
+            byte b = buf.get(i);
+            if (b < 0) return i;
+            for (long stop : stops) {
+                if (b == (byte) stop) return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Finds the first symbol, which stops a run
+     * @param table the automaton
+     * @param state state, which has runs
+     * @param buf the symbols
+     * @param from index of the first symbol of the run
+     * @param to index after the last symbol to scan
+     * @return index of the stop symbol, to if there is none
+     */
+    static int scan(TransitionTable table, int state, char[] buf, int from, int to) {
+        int i = from;
+        while (i < to && !table.stopsRun(state, buf[i])) i++;
+        return i;
+    }
+
+    /**
+     * Finds the first symbol, which stops a run
+     * @param table the automaton
+     * @param state state, which has runs
+     * @param str the symbols
+     * @param from index of the first symbol of the run
+     * @param to index after the last symbol to scan
+     * @return index of the stop symbol, to if there is none
+     */
+    static int scan(TransitionTable table, int state, CharSequence str, int from, int to) {
+        int i = from;
+        while (i < to && !table.stopsRun(state, str.charAt(i))) i++;
+        return i;
+    }
+
+    /**
+     * Marks zero bytes of a long. The sum does not carry between bytes,
+     * so only zero bytes are marked
+     * @param word the long
+     * @return high bit set in each zero byte
+     */
+    private static long zeroBytes(long word) {
+        long sum = (word & LOW_BITS) + LOW_BITS;
+        return ~(sum | word | LOW_BITS);
+    }
+}
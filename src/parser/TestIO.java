@@ -18,7 +18,9 @@ public class TestIO {
         CSVProcessor csvProcessor = new CSVProcessor();
         File serialized = new File("serialized.dat");
 
-        if (serialized.exists() && serialized.isFile()) {
+        // parsed fields are loaded from the snapshot without parsing
+        boolean cached = serialized.exists() && serialized.isFile();
+        if (cached) {
             csvProcessor.deserialize(serialized);
         } else {
             try (BufferedReader br =
@@ -42,10 +44,6 @@ public class TestIO {
                     }
                 }
             }
-
-            System.out.print("\nSerialization process...");
-            csvProcessor.serialize(serialized);
-            System.out.println("completed");
         }
 
         // Print initial data
@@ -55,11 +53,17 @@ public class TestIO {
 
         Thread t = new Thread(() -> {
             try {
-                csvProcessor.parse();
+                if (!cached) {
+                    csvProcessor.parse();
+
+                    System.out.print("\nSerialization process...");
+                    csvProcessor.serialize(serialized);
+                    System.out.println("completed");
+                }
                 ArrayList<ArrayList<String>> csvFields =
                         csvProcessor.getCsvFields();
                 System.out.println("\n Parsed data: \n" + csvFields);
-            } catch (CSVParseException e) {
+            } catch (CSVParseException | IOException e) {
                 e.printStackTrace();
             }
         });
@@ -0,0 +1,254 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+
+/**
+ * parser.TransitionTable is the compiled form of the csv automaton.
+ * Next states and actions are kept in dense primitive tables indexed
+ * by (state; symbol class), and symbol classes are looked up by char,
+ * so a single pass costs a few array reads and allocates nothing.
+ * Special symbols of a dialect are put into the class table when the
+ * automaton is compiled, so any dialect is parsed at the same cost
+ */
+final class TransitionTable {
+    // symbol classes
+    static final int SYMB_OTHER = 0;            // 'A', any other symbol
+    static final int SYMB_COMMA = 1;            // 'B', field separator
+    static final int SYMB_QUOTE = 2;            // 'C', quote
+    static final int SYMB_SPACE = 3;            // 'D', space or tab
+    static final int SYMB_NEW_LINE = 4;         // 'E', line separator
+    static final int SYMB_ESCAPE = 5;           // 'F', escape of the next symbol
+    static final int SYMB_CLASSES = 6;
+
+    // states
+    static final int INITIAL_STATE = 0;
+    static final int ERROR_STATE = 7;
+    static final int STATES = 10;
+
+    // actions
+    static final byte ACT_APPEND_SYMB = 0;      // append symbol, clear trailing spaces
+    static final byte ACT_APPEND_TRAIL = 1;     // append trailing spaces and symbol
+    static final byte ACT_ADD_TRAIL = 2;        // remember a trailing space
+    static final byte ACT_NEW_FIELD = 3;        // finish the field
+    static final byte ACT_NEW_LINE = 4;         // finish the line
+    static final byte ACT_ERROR = 5;            // unexpected symbol
+    static final byte ACT_NONE = 6;             // empty action
+    static final byte ACT_FLUSH_TRAIL = 7;      // append trailing spaces without the symbol
+    static final byte ACT_OPEN_QUOTE = 8;       // start a quoted field, same as an empty action
+
+    // automaton for the default dialect
+    static final TransitionTable DEFAULT = new TransitionTable(',', '"', CSVDialect.NONE, true);
+
+    // symbol classes of the ascii chars, other chars are SYMB_OTHER
+    private final byte[] asciiClasses;
+
+    // next states, indexed by state * SYMB_CLASSES + symbol class
+    private final byte[] nextStates;
+
+    // actions, indexed by state * SYMB_CLASSES + symbol class
+    private final byte[] actions;
+
+    // ascii symbols, which stop a run of appended symbols, as a bitset of
+    // two longs per state; both are 0 if the state has no runs
+    private final long[] runStops;
+
+    // the stop symbols as bytes, repeated 8 times in a long, null if the state has no runs
+    private final long[][] runStopPatterns;
+
+    /**
+     * Compiles the automaton for a dialect
+     * @param delimiter separator of the fields
+     * @param quote quote of the fields, CSVDialect.NONE if fields are not quoted
+     * @param escape escape of the next symbol, CSVDialect.NONE if there is none
+     * @param trim true if spaces and tabs around unquoted fields are skipped
+     */
+    TransitionTable(char delimiter, char quote, char escape, boolean trim) {
+        asciiClasses = new byte[128];
+        nextStates = new byte[STATES * SYMB_CLASSES];
+        actions = new byte[STATES * SYMB_CLASSES];
+
+        if (trim) {
+            asciiClasses[' '] = SYMB_SPACE;
+            asciiClasses['\t'] = SYMB_SPACE;
+        }
+        asciiClasses['\n'] = SYMB_NEW_LINE;
+        asciiClasses[delimiter] = SYMB_COMMA;
+        if (quote != CSVDialect.NONE) asciiClasses[quote] = SYMB_QUOTE;
+        if (escape != CSVDialect.NONE) asciiClasses[escape] = SYMB_ESCAPE;
+
+        // any pass, which is not defined below, is an error
+        for (int i = 0; i < nextStates.length; i++) {
+            nextStates[i] = ERROR_STATE;
+            actions[i] = ACT_ERROR;
+        }
+
+        put(0, SYMB_OTHER,    1, ACT_APPEND_SYMB);
+        put(0, SYMB_COMMA,    0, ACT_NEW_FIELD);
+        put(0, SYMB_NEW_LINE, 0, ACT_NEW_LINE);
+        put(0, SYMB_QUOTE,    2, ACT_OPEN_QUOTE);
+        put(0, SYMB_SPACE,    6, ACT_NONE);
+
+        put(1, SYMB_OTHER,    1, ACT_APPEND_SYMB);
+        put(1, SYMB_COMMA,    0, ACT_NEW_FIELD);
+        put(1, SYMB_NEW_LINE, 0, ACT_NEW_LINE);
+        put(1, SYMB_QUOTE,    7, ACT_ERROR);
+        put(1, SYMB_SPACE,    5, ACT_ADD_TRAIL);
+
+        put(2, SYMB_OTHER,    2, ACT_APPEND_SYMB);
+        put(2, SYMB_COMMA,    2, ACT_APPEND_SYMB);
+        put(2, SYMB_SPACE,    2, ACT_APPEND_SYMB);
+        put(2, SYMB_NEW_LINE, 2, ACT_APPEND_SYMB);
+        put(2, SYMB_QUOTE,    3, ACT_NONE);
+
+        put(3, SYMB_QUOTE,    2, ACT_APPEND_SYMB);
+        put(3, SYMB_NEW_LINE, 0, ACT_NEW_LINE);
+        put(3, SYMB_COMMA,    0, ACT_NEW_FIELD);
+        put(3, SYMB_SPACE,    4, ACT_NONE);
+        put(3, SYMB_OTHER,    7, ACT_ERROR);
+
+        put(4, SYMB_SPACE,    4, ACT_NONE);
+        put(4, SYMB_OTHER,    7, ACT_ERROR);
+        put(4, SYMB_QUOTE,    7, ACT_ERROR);
+        put(4, SYMB_COMMA,    0, ACT_NEW_FIELD);
+        put(4, SYMB_NEW_LINE, 0, ACT_NEW_LINE);
+
+        put(5, SYMB_SPACE,    5, ACT_ADD_TRAIL);
+        put(5, SYMB_OTHER,    0, ACT_APPEND_TRAIL);
+        put(5, SYMB_NEW_LINE, 0, ACT_NEW_LINE);
+        put(5, SYMB_COMMA,    0, ACT_NEW_FIELD);
+        put(5, SYMB_QUOTE,    7, ACT_ERROR);
+
+        put(6, SYMB_SPACE,    6, ACT_NONE);
+        put(6, SYMB_OTHER,    1, ACT_APPEND_SYMB);
+        put(6, SYMB_QUOTE,    2, ACT_OPEN_QUOTE);
+        put(6, SYMB_COMMA,    0, ACT_NEW_FIELD);
+        put(6, SYMB_NEW_LINE, 0, ACT_NEW_LINE);
+
+        // an escaped symbol is appended as it is, in quoted and unquoted fields
+        put(0, SYMB_ESCAPE,   8, ACT_NONE);
+        put(1, SYMB_ESCAPE,   8, ACT_NONE);
+        put(5, SYMB_ESCAPE,   8, ACT_FLUSH_TRAIL);
+        put(6, SYMB_ESCAPE,   8, ACT_NONE);
+        put(2, SYMB_ESCAPE,   9, ACT_NONE);
+        for (int symbClass = 0; symbClass < SYMB_CLASSES; symbClass++) {
+            put(8, symbClass, 1, ACT_APPEND_SYMB);
+            put(9, symbClass, 2, ACT_APPEND_SYMB);
+        }
+
+        runStops = new long[STATES * 2];
+        runStopPatterns = new long[STATES][];
+        compileRuns();
+    }
+
+    /**
+     * Returns the class of a symbol
+     * @param symbol the symbol
+     * @return one of the SYMB_* constants
+     */
+    int symbolClass(char symbol) {
+        return symbol < 128 ? asciiClasses[symbol] : SYMB_OTHER;
+    }
+
+    /**
+     * Returns the state, which follows the state on the symbol class
+     * @param state current state
+     * @param symbClass symbol class
+     * @return next state
+     */
+    int nextState(int state, int symbClass) {
+        return nextStates[state * SYMB_CLASSES + symbClass];
+    }
+
+    /**
+     * Returns the action of the pass from the state on the symbol class
+     * @param state current state
+     * @param symbClass symbol class
+     * @return one of the ACT_* constants
+     */
+    int action(int state, int symbClass) {
+        return actions[state * SYMB_CLASSES + symbClass];
+    }
+
+    /**
+     * Checks if a state keeps appending symbols of the class SYMB_OTHER,
+     * so a run of such symbols might be appended at once
+     * @param state the state
+     * @return true if the state has runs
+     */
+    boolean hasRuns(int state) {
+        return runStopPatterns[state] != null;
+    }
+
+    /**
+     * Checks if a symbol stops a run in the state. Non-ascii symbols
+     * are SYMB_OTHER, so they never stop a run
+     * @param state the state, which has runs
+     * @param symbol the symbol
+     * @return true if the symbol needs a pass of the automaton
+     */
+    boolean stopsRun(int state, char symbol) {
+        if (symbol >= 128) return false;
+        return ((runStops[state * 2 + (symbol >> 6)] >>> symbol) & 1) != 0;
+    }
+
+    /**
+     * Returns ascii symbols, which stop a run in the state
+     * @param state the state
+     * @return each symbol repeated in all 8 bytes of a long, null if the state has no runs
+     */
+    long[] runStopPatterns(int state) {
+        return runStopPatterns[state];
+    }
+
+    /**
+     * Finds states, which pass to themselves appending SYMB_OTHER, and
+     * the symbols, which stop the runs in them. Line separators always
+     * stop a run, since they are recognized before the automaton
+     */
+    private void compileRuns() {
+        for (int state = 0; state < STATES; state++) {
+            if (!appends(state, SYMB_OTHER)) continue;
+
+            int count = 0;
+            for (char c = 0; c < 128; c++) {
+                if (c == '\n' || c == '\r' || !appends(state, symbolClass(c))) {
+                    runStops[state * 2 + (c >> 6)] |= 1L << c;
+                    count++;
+                }
+            }
+
+            long[] patterns = new long[count];
+            int k = 0;
+            for (char c = 0; c < 128; c++) {
+                if (stopsRun(state, c)) patterns[k++] = c * 0x0101010101010101L;
+            }
+            runStopPatterns[state] = patterns;
+        }
+    }
+
+    /**
+     * Checks if the state stays the same and appends the symbol
+     * @param state the state
+     * @param symbClass class of the symbol
+     * @return true for the pass, which continues a run
+     */
+    private boolean appends(int state, int symbClass) {
+        return nextState(state, symbClass) == state && action(state, symbClass) == ACT_APPEND_SYMB;
+    }
+
+    /**
+     * Puts a pass into the automaton
+     * @param startState start state
+     * @param symbClass symbol class that defines the next state
+     * @param finalState final state
+     * @param action action when finalState is reached
+     */
+    private void put(int startState, int symbClass, int finalState, byte action) {
+        nextStates[startState * SYMB_CLASSES + symbClass] = (byte) finalState;
+        actions[startState * SYMB_CLASSES + symbClass] = action;
+    }
+}
@@ -0,0 +1,126 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The publisher reads only the requested batches and completes without demand
+ */
+public class CSVPublisherTest {
+    private Path path;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        path = Files.createTempFile("publisher", ".csv");
+        Files.writeString(path, "1,a\n2,b\n3,c\n4,d\n5,e\n", StandardCharsets.UTF_8);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void batchesFollowDemand() throws IOException {
+        Recorder recorder = subscribe(2);
+
+        recorder.subscription.request(1);
+        assertEquals(1, recorder.batches.size());
+        assertEquals(2, recorder.batches.get(0).size());
+        assertFalse(recorder.completed);
+
+        recorder.subscription.request(5);
+        assertEquals(3, recorder.batches.size());
+        assertEquals(1, recorder.batches.get(2).size());  // only the last batch is shorter
+        assertTrue(recorder.completed);
+        assertNull(recorder.error);
+    }
+
+    @Test
+    public void completesAfterLastFullBatch() throws IOException {
+        Files.writeString(path, "1,a\n2,b\n3,c\n4,d\n", StandardCharsets.UTF_8);
+        Recorder recorder = subscribe(2);
+
+        recorder.subscription.request(2);
+        assertEquals(2, recorder.batches.size());
+        assertTrue(recorder.completed);
+    }
+
+    @Test
+    public void cancelStopsBatches() throws IOException {
+        Recorder recorder = subscribe(1);
+
+        recorder.subscription.request(1);
+        recorder.subscription.cancel();
+        recorder.subscription.request(1);
+        assertEquals(1, recorder.batches.size());
+        assertFalse(recorder.completed);
+    }
+
+    @Test
+    public void secondSubscriberGetsError() throws IOException {
+        CSVPublisher publisher = new CSVPublisher(CSVReader.open(path), 2, Runnable::run);
+        publisher.subscribe(new Recorder());
+        Recorder second = new Recorder();
+        publisher.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    /**
+     * Subscribes a recorder, the signals are sent on the calling thread
+     */
+    private Recorder subscribe(int batchSize) throws IOException {
+        Recorder recorder = new Recorder();
+        new CSVPublisher(CSVReader.open(path), batchSize, Runnable::run).subscribe(recorder);
+        return recorder;
+    }
+
+    /**
+     * Subscriber, which keeps the signals
+     */
+    private static class Recorder implements Flow.Subscriber<List<ArrayList<String>>> {
+        Flow.Subscription subscription;
+        final List<List<ArrayList<String>>> batches = new ArrayList<>();
+        boolean completed;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(List<ArrayList<String>> batch) {
+            batches.add(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
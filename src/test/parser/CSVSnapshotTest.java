@@ -0,0 +1,86 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A serialized table is restored with its header, types and nulls
+ */
+public class CSVSnapshotTest {
+    private File file;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = Files.createTempFile("snapshot", ".dat").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Test
+    public void typedColumns() throws IOException {
+        CSVProcessor processor = new CSVProcessor();
+        processor.setSchema(new CSVSchema(true, ColumnType.TEXT, ColumnType.LONG, ColumnType.DOUBLE));
+        processor.parse("name,count,price\né,1,2.5\n\"b, c\",,-0.25\nd,-7,\n");
+        processor.serialize(file);
+
+        CSVProcessor restored = new CSVProcessor();
+        restored.deserialize(file);
+        CSVTable expected = processor.getTable();
+        CSVTable table = restored.getTable();
+
+        assertEquals(expected.getHeader(), table.getHeader());
+        assertEquals(expected.toLists(), table.toLists());
+        assertEquals(3, table.getRowCount());
+        for (int col = 0; col < 3; col++) assertEquals(expected.getType(col), table.getType(col));
+
+        assertEquals(1, table.getLong(0, 1));
+        assertEquals(-7, table.getLong(2, 1));
+        assertTrue(table.isNull(1, 1));
+        assertEquals(-0.25, table.getDouble(1, 2));
+        assertTrue(table.isNull(2, 2));
+        assertFalse(table.isNull(0, 2));
+        assertEquals("b, c", table.getString(1, 0));
+    }
+
+    @Test
+    public void textColumns() throws IOException {
+        CSVProcessor processor = new CSVProcessor();
+        processor.parse("a,b\n1,\n");
+        processor.serialize(file);
+
+        CSVProcessor restored = new CSVProcessor();
+        restored.deserialize(file);
+        assertEquals(processor.getCsvFields(), restored.getCsvFields());
+        assertEquals(ColumnType.TEXT, restored.getTable().getType(1));
+    }
+
+    @Test
+    public void corruptedSnapshot() throws IOException {
+        CSVProcessor processor = new CSVProcessor();
+        processor.parse("a,b\n1,2\n");
+        processor.serialize(file);
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(file.toPath(), bytes);
+        assertThrows(IOException.class, () -> new CSVProcessor().deserialize(file));
+    }
+}
@@ -0,0 +1,103 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The tailer reads appended records and starts over on rotation
+ */
+public class CSVTailerTest {
+    private Path dir;
+    private Path path;
+    private CSVProcessor processor;
+    private CSVTailer tailer;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("tailer");
+        path = dir.resolve("log.csv");
+        write("1,2\n", false);
+        processor = new CSVProcessor();
+        tailer = processor.tail(path.toFile());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        tailer.close();
+        try (var files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void appendedRecords() throws IOException {
+        assertEquals(1, tailer.poll());
+        write("3,4\n5,", true);
+        assertEquals(1, tailer.poll());             // the incomplete record waits for its end
+        write("6\n", true);
+        assertEquals(1, tailer.poll());
+        assertEquals(rows("1,2", "3,4", "5,6"), processor.getCsvFields());
+    }
+
+    @Test
+    public void renamedFile() throws IOException {
+        tailer.poll();
+        write("3,4\n", true);
+        Files.move(path, dir.resolve("log.csv.1"));
+        write("7,8\n9,10\n", false);
+
+        tailer.poll();
+        assertEquals(rows("7,8", "9,10"), processor.getCsvFields());
+        write("11,12\n", true);
+        assertEquals(1, tailer.poll());
+        assertEquals(rows("7,8", "9,10", "11,12"), processor.getCsvFields());
+    }
+
+    @Test
+    public void truncatedFile() throws IOException {
+        write("3,4\n", true);
+        tailer.poll();
+        write("5,6\n", false);
+
+        assertEquals(1, tailer.poll());
+        assertEquals(rows("5,6"), processor.getCsvFields());
+    }
+
+    @Test
+    public void copyTruncatedFile() throws IOException {
+        tailer.poll();
+        write("5,6\n7,8\n", false);                // longer than the read part before the next refresh
+
+        assertEquals(2, tailer.poll());
+        assertEquals(rows("5,6", "7,8"), processor.getCsvFields());
+    }
+
+    private void write(String data, boolean append) throws IOException {
+        if (append) Files.writeString(path, data, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        else Files.writeString(path, data, StandardCharsets.UTF_8);
+    }
+
+    private static List<List<String>> rows(String... rows) {
+        List<List<String>> fields = new ArrayList<>();
+        for (String row : rows) fields.add(Arrays.asList(row.split(",")));
+        return fields;
+    }
+}
@@ -0,0 +1,81 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Written records are parsed back unchanged
+ */
+public class CSVWriterTest {
+    private Path path;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        path = Files.createTempFile("writer", ".csv");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<List<String>> records = Arrays.asList(
+                Arrays.asList("plain", "with, comma", "with \"quotes\""),
+                Arrays.asList(" spaces ", "multi\nline", ""),
+                Arrays.asList("é", "€", "\t"));
+        // a small buffer is flushed in the middle of the records
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        try (CSVWriter writer = new CSVWriter(channel, StandardCharsets.UTF_8, 16)) {
+            writer.writeAll(records);
+        }
+
+        assertEquals(records, parse(path));
+    }
+
+    @Test
+    public void exportIsStable() throws IOException {
+        Files.writeString(path, "a,b\n\"x, y\",\"q\"\"\"\n 1 ,\"2\n3\"\n", StandardCharsets.UTF_8);
+        CSVProcessor processor = new CSVProcessor();
+        processor.load(path.toFile());
+        processor.parse();
+        ArrayList<ArrayList<String>> fields = processor.getCsvFields();
+
+        processor.export(path.toFile());
+        byte[] exported = Files.readAllBytes(path);
+        assertEquals(fields, parse(path));
+
+        CSVProcessor again = new CSVProcessor();
+        again.load(path.toFile());
+        again.parse();
+        again.export(path.toFile());
+        assertArrayEquals(exported, Files.readAllBytes(path));
+    }
+
+    private static ArrayList<ArrayList<String>> parse(Path path) throws IOException {
+        CSVProcessor processor = new CSVProcessor();
+        processor.load(path.toFile());
+        processor.parse();
+        return processor.getCsvFields();
+    }
+}
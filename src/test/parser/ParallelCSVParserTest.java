@@ -0,0 +1,88 @@
+package parser;
+
+/**
+ * OOP2
+ * Created by V.Batytskyy on 02.04.14
+ */
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Parallel parsing gives the same fields as the sequential one,
+ * wherever the ranges are cut
+ */
+public class ParallelCSVParserTest {
+    private ForkJoinPool pool;
+    private Path path;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(4);
+        path = Files.createTempFile("parallel", ".csv");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void sameAsSequential() throws IOException {
+        Files.writeString(path, "id,name,note\n"
+                + "1,plain,\"quoted, with a comma\"\n"
+                + "2,\"multi\nline\",\"\"\"escaped\"\" quotes\"\r\n"
+                + "3,  trimmed  ,\"a\r\nb\"\n"
+                + "4,é,\"€\"\n", StandardCharsets.UTF_8);
+
+        ArrayList<ArrayList<String>> expected = sequential();
+        for (int ranges = 1; ranges <= 16; ranges++) {
+            assertEquals(expected, new ParallelCSVParser(pool, ranges).parse(path), "ranges " + ranges);
+        }
+    }
+
+    @Test
+    public void sameAsSequentialOnRandomFiles() throws IOException {
+        Random random = new Random(13);
+        String alphabet = "ab ,\"\n\r";
+        for (int n = 0; n < 500; n++) {
+            StringBuilder data = new StringBuilder("a,b\n");
+            int length = random.nextInt(80);
+            for (int i = 0; i < length; i++) data.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            Files.writeString(path, data, StandardCharsets.UTF_8);
+
+            String expected;
+            try {
+                expected = sequential().toString();
+            } catch (CSVParseException e) {
+                expected = "error";
+            }
+            String actual;
+            try {
+                actual = new ParallelCSVParser(pool, 1 + random.nextInt(12)).parse(path).toString();
+            } catch (CSVParseException e) {
+                actual = "error";
+            }
+            assertEquals(expected, actual, data.toString());
+        }
+    }
+
+    private ArrayList<ArrayList<String>> sequential() throws IOException {
+        CSVProcessor processor = new CSVProcessor();
+        processor.load(path.toFile());
+        processor.parse();
+        return processor.getCsvFields();
+    }
+}